@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package redmosquito.xjc.plugin.fluent.ext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Persisted index of the field analyses of the generated classes. Each entry
+ * maps a class name to the structural fingerprint of the class and to the
+ * types of its declared fields, in declaration order:
+ * 
+ * <pre>
+ * generated.ShipOrder=5f1c...:OTHER,MANAGED_FIELD,MANAGED_LIST,OTHER
+ * </pre>
+ * <p>
+ * The index file is only written when an entry changed, so its timestamp
+ * tells whether the analyses changed since the previous run.
+ * 
+ * @author Jrme Delagnes
+ */
+final class FingerprintIndex {
+
+   /** Separator of the fingerprint and the field types. */
+   private static final char FINGERPRINT_SEPARATOR = ':';
+
+   /** Separator of the field types. */
+   private static final String TYPE_SEPARATOR = ",";
+
+   /** The index file. */
+   private final File file;
+
+   /** The entries read from the index file. */
+   private final Properties previous = new Properties();
+
+   /** The entries of the current run. */
+   private final Properties current = new Properties();
+
+   /** The digest of the fingerprints, created by the first one. */
+   private MessageDigest digest;
+
+   /**
+    * Constructor.
+    * @param file - the index file.
+    */
+   private FingerprintIndex(File file) {
+      this.file = file;
+   }
+
+   /**
+    * Loads the index file. A missing file gives an empty index.
+    * @param file - the index file.
+    * @return the index.
+    * @throws IOException if the file cannot be read.
+    */
+   static FingerprintIndex load(File file) throws IOException {
+      FingerprintIndex index = new FingerprintIndex(file);
+      if (file.isFile()) {
+         InputStream in = new FileInputStream(file);
+         try {
+            index.previous.load(in);
+         } finally {
+            in.close();
+         }
+      }
+      return index;
+   }
+
+   /**
+    * Returns the field types recorded by the previous run for the class, if
+    * the class has not changed since.
+    * @param className - the class name.
+    * @param fingerprint - the current fingerprint of the class.
+    * @return the names of the field types, or null if the class is unknown or
+    *         has changed.
+    */
+   String[] get(String className, String fingerprint) {
+      String entry = previous.getProperty(className);
+      if (entry == null || !entry.startsWith(fingerprint + FINGERPRINT_SEPARATOR)) {
+         return null;
+      }
+      String types = entry.substring(fingerprint.length() + 1);
+      return types.length() == 0 ? new String[0] : types.split(TYPE_SEPARATOR);
+   }
+
+   /**
+    * Records the field types of the class for the next run.
+    * @param className - the class name.
+    * @param fingerprint - the current fingerprint of the class.
+    * @param types - the names of the field types.
+    */
+   void put(String className, String fingerprint, String[] types) {
+      StringBuilder entry = new StringBuilder(fingerprint).append(FINGERPRINT_SEPARATOR);
+      for (int i = 0; i < types.length; i++) {
+         if (i > 0) {
+            entry.append(TYPE_SEPARATOR);
+         }
+         entry.append(types[i]);
+      }
+      current.setProperty(className, entry.toString());
+   }
+
+   /**
+    * Writes the entries of the current run, if they differ from the entries
+    * of the previous run.
+    * @return true if the index file has been written.
+    * @throws IOException if the file cannot be written.
+    */
+   boolean store() throws IOException {
+      if (current.equals(previous)) {
+         return false;
+      }
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+         throw new IOException("Cannot create directory " + parent);
+      }
+      OutputStream out = new FileOutputStream(file);
+      try {
+         current.store(out, "XJC Fluent API Extensions index");
+      } finally {
+         out.close();
+      }
+      return true;
+   }
+
+   /**
+    * Returns the hexadecimal SHA-1 digest of the structure description of a
+    * class. The digest is reused from one class to the next, so the
+    * fingerprints must be computed by one thread at a time.
+    * @param structure - the structure description.
+    * @return the fingerprint.
+    */
+   String fingerprint(String structure) {
+      try {
+         if (digest == null) {
+            digest = MessageDigest.getInstance("SHA-1");
+         }
+         byte[] bytes = digest.digest(structure.getBytes("UTF-8"));
+         StringBuilder fingerprint = new StringBuilder(bytes.length * 2);
+         for (byte b : bytes) {
+            fingerprint.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+         }
+         return fingerprint.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      } catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -16,25 +16,79 @@
  */
 package redmosquito.xjc.plugin.fluent.ext;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 import com.sun.codemodel.ClassType;
 import com.sun.codemodel.JBlock;
+import com.sun.codemodel.JClassAlreadyExistsException;
 import com.sun.codemodel.JClass;
+import com.sun.codemodel.JCodeModel;
 import com.sun.codemodel.JConditional;
 import com.sun.codemodel.JDefinedClass;
 import com.sun.codemodel.JExpr;
+import com.sun.codemodel.JExpression;
+import com.sun.codemodel.JFieldRef;
+import com.sun.codemodel.JFieldVar;
+import com.sun.codemodel.JForEach;
 import com.sun.codemodel.JForLoop;
+import com.sun.codemodel.JFormatter;
+import com.sun.codemodel.JInvocation;
 import com.sun.codemodel.JMethod;
 import com.sun.codemodel.JMod;
+import com.sun.codemodel.JPackage;
+import com.sun.codemodel.JOp;
 import com.sun.codemodel.JPrimitiveType;
+import com.sun.codemodel.JType;
 import com.sun.codemodel.JVar;
+import com.sun.tools.xjc.BadCommandLineException;
 import com.sun.tools.xjc.Options;
 import com.sun.tools.xjc.Plugin;
+import com.sun.tools.xjc.model.CClassInfo;
+import com.sun.tools.xjc.model.CElementInfo;
+import com.sun.tools.xjc.model.CTypeInfo;
 import com.sun.tools.xjc.outline.ClassOutline;
 import com.sun.tools.xjc.outline.FieldOutline;
 import com.sun.tools.xjc.outline.Outline;
@@ -46,6 +100,201 @@ import com.sun.tools.xjc.outline.Outline;
  */
 public final class FluentApiExtPlugin extends Plugin {
 
+   /** Option enabling the pre-sizing of lists in indexed accessors. */
+   private static final String PRESIZE_OPTION = "-Xfluent-api-ext-presize";
+
+   /** Option enabling the sparse storage of indexed list accessors. */
+   private static final String SPARSE_OPTION = "-Xfluent-api-ext-sparse";
+
+   /** Option enabling the pooling of the managed instances. */
+   private static final String POOL_OPTION = "-Xfluent-api-ext-pool";
+
+   /** Option enabling the withNew&lt;Property&gt;s(int count) batch allocators. */
+   private static final String BATCH_OPTION = "-Xfluent-api-ext-batch";
+
+   /** Option enabling the with&lt;Property&gt;All() and adopt&lt;Property&gt;() bulk list methods. */
+   private static final String BULK_OPTION = "-Xfluent-api-ext-bulk";
+
+   /** Option enabling the parallel analysis of the fields. */
+   private static final String PARALLEL_OPTION = "-Xfluent-api-ext-parallel";
+
+   /** Option setting the file of the persisted field analyses. */
+   private static final String INDEX_OPTION = "-Xfluent-api-ext-index=";
+
+   /** Option enabling the thread-safe lazy initialization of the managed fields. */
+   private static final String THREAD_SAFE_OPTION = "-Xfluent-api-ext-threadsafe";
+
+   /** Option enabling the concurrent appends to the managed lists. */
+   private static final String CONCURRENT_OPTION = "-Xfluent-api-ext-concurrent";
+
+   /** Option enabling the streaming accessors of the managed lists. */
+   private static final String STREAM_OPTION = "-Xfluent-api-ext-stream";
+
+   /** Option enabling the unmarshalling listeners of the managed lists. */
+   private static final String LISTENER_OPTION = "-Xfluent-api-ext-listener";
+
+   /** Option enabling the primitive array storage of the primitive lists. */
+   private static final String PRIMITIVE_OPTION = "-Xfluent-api-ext-primitive";
+
+   /** Option enabling the copy-on-write forks of the generated classes. */
+   private static final String FORK_OPTION = "-Xfluent-api-ext-fork";
+
+   /** Option enabling the off-heap stores of the lists of fixed-width elements. */
+   private static final String OFF_HEAP_OPTION = "-Xfluent-api-ext-offheap";
+
+   /** Option enabling the chained setters of the simple fields. */
+   private static final String CHAIN_OPTION = "-Xfluent-api-ext-chain";
+
+   /** Option enabling the builders of the managed classes. */
+   private static final String BUILDER_OPTION = "-Xfluent-api-ext-builder";
+
+   /** Option enabling the fluentCompact() and fluentIsEmpty() methods. */
+   private static final String COMPACT_OPTION = "-Xfluent-api-ext-compact";
+
+   /** Option enabling the fluentReset() methods. */
+   private static final String RESET_OPTION = "-Xfluent-api-ext-reset";
+
+   /** Option enabling the fluentCopy() deep copy methods. */
+   private static final String COPY_OPTION = "-Xfluent-api-ext-copy";
+
+   /** Option enabling the peek&lt;Property&gt;() read accessors and the empty instances. */
+   private static final String PEEK_OPTION = "-Xfluent-api-ext-peek";
+
+   /** Option setting the file of the generation metrics report. */
+   private static final String METRICS_OPTION = "-Xfluent-api-ext-metrics=";
+
+   /** Initial number of records of the generated off-heap stores. */
+   private static final int OFF_HEAP_CAPACITY = 16;
+
+   /** Estimated size of a reference, compressed, for the estimates of <code>fluentCompact()</code>. */
+   private static final int REFERENCE_SIZE = 4;
+
+   /** Estimated size of an empty list object, for the estimates of <code>fluentCompact()</code>. */
+   private static final int LIST_SIZE = 24;
+
+   /** Name of the generated method flushing the pending values into the JAXB fields. */
+   private static final String FLUSH_METHOD = "fluentFlush";
+
+   /** The creation of the list in the getter of a list field, see {@link #getListImplementation(FieldOutline)}. */
+   private static final Pattern NEW_LIST_PATTERN = Pattern.compile("=\\s*new\\s+([\\w.$]+)\\s*(<?)");
+
+   /** Pre-sizes the lists in one step rather than padding them one slot at a time. */
+   private boolean presize = false;
+
+   /** Stores the indexed list values in a sparse map until the list is read. */
+   private boolean sparse = false;
+
+   /** Takes the managed instances from pluggable pools instead of allocating them. */
+   private boolean pool = false;
+
+   /** Generates the withNew&lt;Property&gt;s(int count) methods allocating the list elements in batch. */
+   private boolean batch = false;
+
+   /** Generates the with&lt;Property&gt;All() and adopt&lt;Property&gt;() methods filling the lists in one call. */
+   private boolean bulk = false;
+
+   /** Analyzes the fields of the classes in parallel. */
+   private boolean parallel = false;
+
+   /** Initializes the managed fields without race in the with&lt;Property&gt;() methods. */
+   private boolean threadSafe = false;
+
+   /** Appends the withNew&lt;Property&gt;() values to striped lock-free queues until the list is read. */
+   private boolean concurrent = false;
+
+   /** Generates the streamNew&lt;Property&gt;() accessors writing the list elements to a sink. */
+   private boolean stream = false;
+
+   /** Generates the create&lt;Property&gt;Listener() methods handing the unmarshalled list elements to a handler. */
+   private boolean listener = false;
+
+   /** Buffers the values of the primitive lists in primitive arrays until the list is read. */
+   private boolean primitive = false;
+
+   /** Generates the fluentFork() methods sharing the children until they are written. */
+   private boolean fork = false;
+
+   /** Appends the withNew&lt;Property&gt;() values of the fixed-width elements to off-heap stores until the list is read. */
+   private boolean offHeap = false;
+
+   /** Generates the with&lt;Property&gt;(value) setters returning the instance. */
+   private boolean chain = false;
+
+   /** Generates the Builder classes creating the lists at their final size. */
+   private boolean builder = false;
+
+   /** Generates the fluentCompact() methods trimming the lists and dropping the empty children. */
+   private boolean compact = false;
+
+   /** Generates the fluentReset() methods clearing the instance graphs in place. */
+   private boolean reset = false;
+
+   /** Generates the fluentCopy() deep copy methods. */
+   private boolean deepCopy = false;
+
+   /** Generates the peek&lt;Property&gt;() accessors reading a missing child as a shared empty instance. */
+   private boolean peek = false;
+
+   /** The file of the persisted field analyses, see {@link FingerprintIndex}. */
+   private File indexFile = null;
+
+   /** The file of the generation metrics report, see {@link GenerationMetrics}. */
+   private File metricsFile = null;
+
+   /** The type of the fields of the current run, see {@link #getFieldType(FieldOutline)}. */
+   private final Map<FieldOutline, FieldType> fieldTypes = new HashMap<FieldOutline, FieldType>();
+
+   /** The analysis of the field types of the current run, see {@link #analyzeType(JClass)}. */
+   private final ConcurrentMap<JClass, TypeAnalysis> typeAnalyses = new ConcurrentHashMap<JClass, TypeAnalysis>();
+
+   /** Number of type analyses found in {@link #typeAnalyses}. */
+   private final AtomicInteger typeAnalysisHits = new AtomicInteger();
+
+   /** Number of type analyses missing from {@link #typeAnalyses}. */
+   private final AtomicInteger typeAnalysisMisses = new AtomicInteger();
+
+   /** The classes generated by XJC in the current run. */
+   private final Set<JDefinedClass> outlineClasses = new HashSet<JDefinedClass>();
+
+   /** The generated flush methods, by class. */
+   private final Map<JDefinedClass, JMethod> flushMethods = new HashMap<JDefinedClass, JMethod>();
+
+   /** The flags telling whether the fields are shared with a fork, see {@link #createForkFlags(FieldOutline)}. */
+   private final Map<FieldOutline, JFieldVar> sharedFlags = new HashMap<FieldOutline, JFieldVar>();
+
+   /** The sets of the list elements shared with a fork, see {@link #createForkFlags(FieldOutline)}. */
+   private final Map<FieldOutline, JFieldVar> sharedElements = new HashMap<FieldOutline, JFieldVar>();
+
+   /** The off-heap stores of the lists, see {@link #createOffHeapStore(FieldOutline)}. */
+   private final Map<FieldOutline, JFieldVar> offHeapStores = new HashMap<FieldOutline, JFieldVar>();
+
+   /** The cursor classes of the element classes, null if not eligible, see {@link #getCursorClass(JClass, Outline)}. */
+   private final Map<JClass, JDefinedClass> cursorClasses = new HashMap<JClass, JDefinedClass>();
+
+   /** The estimated shallow sizes of the classes, see {@link #getShallowSize(ClassOutline)}. */
+   private final Map<JClass, Integer> shallowSizes = new HashMap<JClass, Integer>();
+
+   /** The classes needing an empty instance, see {@link #createEmptyInstances(Outline)}. */
+   private final Set<JDefinedClass> emptyClasses = new HashSet<JDefinedClass>();
+
+   /** The generated methods writing the fields, by class, see {@link #createMutatorMethod(JDefinedClass, JType, String)}. */
+   private final Map<JDefinedClass, List<JMethod>> mutatorMethods = new HashMap<JDefinedClass, List<JMethod>>();
+
+   /** The pool interfaces of the packages, null on conflict, see {@link #createPoolMethods(ClassOutline)}. */
+   private final Map<JPackage, JDefinedClass> poolInterfaces = new HashMap<JPackage, JDefinedClass>();
+
+   /** The XJC error handler of the current run, reporting the generation conflicts. */
+   private ErrorHandler errorHandler = null;
+
+   /** Prints the generation details, from the XJC options of the current run. */
+   private boolean verbose = false;
+
+   /** The list classes of the list fields, null if unknown, see {@link #getListImplementation(FieldOutline)}. */
+   private final Map<FieldOutline, JClass> listImplementations = new HashMap<FieldOutline, JClass>();
+
+   /** The classes which could not be loaded, reported once, see {@link #loadClass(JClass)}. */
+   private final Set<String> unloadedClasses = new HashSet<String>();
+
    /**
     * {@inheritDoc}
     */
@@ -57,42 +306,527 @@ public final class FluentApiExtPlugin extends Plugin {
     * {@inheritDoc}
     */
    public String getUsage() {
-      return " Fluent API Extensions";
+      return "  -Xfluent-api-ext          :  Fluent API Extensions\n"
+         + "  -Xfluent-api-ext-presize  :  pre-sizes lists in one step in with<Property>(int index) methods\n"
+         + "  -Xfluent-api-ext-sparse   :  stores with<Property>(int index) values in a sparse map until the list is read\n"
+         + "  -Xfluent-api-ext-pool     :  takes the managed instances from pools set with fluentSetPool(), see fluentRecycle()\n"
+         + "  -Xfluent-api-ext-batch    :  generates withNew<Property>s(int count) methods appending count new elements\n"
+         + "  -Xfluent-api-ext-bulk     :  generates with<Property>All() and adopt<Property>() methods filling lists at once\n"
+         + "  -Xfluent-api-ext-parallel :  analyzes the fields of the classes in parallel\n"
+         + "  -Xfluent-api-ext-threadsafe :  initializes the managed fields without race in with<Property>() methods\n"
+         + "  -Xfluent-api-ext-concurrent :  appends withNew<Property>() values to striped lock-free queues until the list is read\n"
+         + "  -Xfluent-api-ext-stream    :  generates streamNew<Property>() methods writing list elements to a sink\n"
+         + "  -Xfluent-api-ext-listener  :  generates unmarshaller listeners handing list elements to a handler as they are read\n"
+         + "  -Xfluent-api-ext-primitive :  buffers primitive list values in primitive arrays until the list is read\n"
+         + "  -Xfluent-api-ext-fork      :  generates fluentFork() methods sharing the children until they are written\n"
+         + "  -Xfluent-api-ext-offheap   :  appends withNew<Property>() records of fixed-width elements to off-heap stores\n"
+         + "  -Xfluent-api-ext-chain     :  generates with<Property>(value) setters returning this for the simple fields\n"
+         + "  -Xfluent-api-ext-builder   :  generates Builder classes creating the lists at their final size in build()\n"
+         + "  -Xfluent-api-ext-compact   :  generates fluentCompact(boolean prune) and fluentIsEmpty() methods\n"
+         + "  -Xfluent-api-ext-reset     :  generates fluentReset() methods clearing instance graphs for reuse\n"
+         + "  -Xfluent-api-ext-copy      :  generates fluentCopy() deep copy methods\n"
+         + "  -Xfluent-api-ext-peek      :  generates peek<Property>() methods reading missing children as FLUENT_EMPTY\n"
+         + "  -Xfluent-api-ext-index=<file> :  reuses the field analyses of the unchanged classes from the index file\n"
+         + "  -Xfluent-api-ext-metrics=<file> :  writes the generation timings and counts to the JSON file\n";
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int parseArgument(Options opt, String[] args, int i) throws BadCommandLineException, IOException {
+      if (PRESIZE_OPTION.equals(args[i])) {
+         presize = true;
+         return 1;
+      }
+      if (SPARSE_OPTION.equals(args[i])) {
+         sparse = true;
+         return 1;
+      }
+      if (POOL_OPTION.equals(args[i])) {
+         pool = true;
+         return 1;
+      }
+      if (BATCH_OPTION.equals(args[i])) {
+         batch = true;
+         return 1;
+      }
+      if (BULK_OPTION.equals(args[i])) {
+         bulk = true;
+         return 1;
+      }
+      if (PARALLEL_OPTION.equals(args[i])) {
+         parallel = true;
+         return 1;
+      }
+      if (THREAD_SAFE_OPTION.equals(args[i])) {
+         threadSafe = true;
+         return 1;
+      }
+      if (CONCURRENT_OPTION.equals(args[i])) {
+         concurrent = true;
+         return 1;
+      }
+      if (STREAM_OPTION.equals(args[i])) {
+         stream = true;
+         return 1;
+      }
+      if (LISTENER_OPTION.equals(args[i])) {
+         listener = true;
+         return 1;
+      }
+      if (PRIMITIVE_OPTION.equals(args[i])) {
+         primitive = true;
+         return 1;
+      }
+      if (FORK_OPTION.equals(args[i])) {
+         fork = true;
+         return 1;
+      }
+      if (OFF_HEAP_OPTION.equals(args[i])) {
+         offHeap = true;
+         return 1;
+      }
+      if (CHAIN_OPTION.equals(args[i])) {
+         chain = true;
+         return 1;
+      }
+      if (BUILDER_OPTION.equals(args[i])) {
+         builder = true;
+         return 1;
+      }
+      if (COMPACT_OPTION.equals(args[i])) {
+         compact = true;
+         return 1;
+      }
+      if (RESET_OPTION.equals(args[i])) {
+         reset = true;
+         return 1;
+      }
+      if (COPY_OPTION.equals(args[i])) {
+         deepCopy = true;
+         return 1;
+      }
+      if (PEEK_OPTION.equals(args[i])) {
+         peek = true;
+         return 1;
+      }
+      if (args[i].startsWith(INDEX_OPTION)) {
+         indexFile = new File(args[i].substring(INDEX_OPTION.length()));
+         return 1;
+      }
+      if (args[i].startsWith(METRICS_OPTION)) {
+         metricsFile = new File(args[i].substring(METRICS_OPTION.length()));
+         return 1;
+      }
+      return 0;
    }
 
    /**
     * {@inheritDoc}
     */
    public boolean run(Outline outline, Options options, ErrorHandler errorHandler) throws SAXException {
-      for (ClassOutline classOutline : outline.getClasses()) {
+      this.errorHandler = errorHandler;
+      this.verbose = options.verbose;
+      listImplementations.clear();
+      unloadedClasses.clear();
+      poolInterfaces.clear();
+      flushMethods.clear();
+      sharedFlags.clear();
+      sharedElements.clear();
+      emptyClasses.clear();
+      mutatorMethods.clear();
+      offHeapStores.clear();
+      cursorClasses.clear();
+      shallowSizes.clear();
+      outlineClasses.clear();
+      fieldTypes.clear();
+      typeAnalyses.clear();
+      typeAnalysisHits.set(0);
+      typeAnalysisMisses.set(0);
+      if (offHeap && concurrent) {
+         errorHandler.warning(new SAXParseException(OFF_HEAP_OPTION + " is ignored with " + CONCURRENT_OPTION
+            + ": the off-heap stores cannot be appended concurrently, the lists are kept on the heap", null));
+      }
+      final GenerationMetrics metrics = new GenerationMetrics();
+      final List<ClassOutline> classOutlines = new ArrayList<ClassOutline>(outline.getClasses());
+      for (ClassOutline classOutline : classOutlines) {
+         outlineClasses.add(classOutline.implClass);
+      }
+      for (ClassOutline classOutline : classOutlines) {
+         getShallowSize(classOutline);
+      }
+      final long analysisStart = System.nanoTime();
+      final FingerprintIndex index = indexFile != null ? loadIndex(errorHandler) : null;
+      final Map<ClassOutline, String> fingerprints = new HashMap<ClassOutline, String>();
+      List<ClassOutline> analyzedOutlines = classOutlines;
+      if (index != null) {
+         analyzedOutlines = new ArrayList<ClassOutline>();
+         for (ClassOutline classOutline : classOutlines) {
+            String fingerprint = getFingerprint(index, classOutline);
+            fingerprints.put(classOutline, fingerprint);
+            if (!reuseFieldTypes(classOutline, index.get(classOutline.implClass.fullName(), fingerprint))) {
+               analyzedOutlines.add(classOutline);
+            }
+         }
+      }
+      if (parallel) {
+         analyzeFieldsInParallel(analyzedOutlines);
+      } else {
+         for (ClassOutline classOutline : analyzedOutlines) {
+            for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+               fieldTypes.put(fieldOutline, getFieldType(fieldOutline));
+            }
+         }
+      }
+      long time = metrics.record("classification", analysisStart);
+      if (options.verbose) {
+         System.out.println("[fluent-api-ext] " + fieldTypes.size() + " fields classified in "
+            + (System.nanoTime() - analysisStart) / 1000000L + " ms, type analysis cache: " + typeAnalysisHits.get()
+            + " hits, " + typeAnalysisMisses.get() + " misses");
+         if (index != null) {
+            System.out.println("[fluent-api-ext] " + (classOutlines.size() - analyzedOutlines.size()) + " of "
+               + classOutlines.size() + " classes reused from " + indexFile);
+         }
+      }
+      if (index != null) {
+         storeIndex(index, classOutlines, fingerprints, options, errorHandler);
+         time = metrics.record("index", time);
+      }
+      // The getters are read before any of them is modified.
+      for (ClassOutline classOutline : classOutlines) {
+         for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+            if (fieldOutline.getPropertyInfo().isCollection()) {
+               getListImplementation(fieldOutline);
+            }
+         }
+      }
+      // The code model is not thread-safe: the methods are always created
+      // sequentially, in the order of the classes.
+      for (ClassOutline classOutline : classOutlines) {
+         final long classStart = time;
+         final int classMethods = classOutline.implClass.methods().size();
          for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
-            switch (getFieldType(fieldOutline)) {
+            FieldType fieldType = fieldTypes.get(fieldOutline);
+            metrics.countField(fieldType.name());
+            if (fork) {
+               // First, so that the lists are unshared before any other getter hook.
+               createForkFlags(fieldOutline);
+               time = metrics.record("createForkFlags", time);
+            }
+            switch (fieldType) {
                case MANAGED_FIELD:
                   createWithMethod(fieldOutline);
+                  time = metrics.record("createWithMethod", time);
+                  if (peek) {
+                     createPeekMethod(fieldOutline);
+                     time = metrics.record("createPeekMethod", time);
+                  }
                   break;
                case MANAGED_LIST:
+                  if (offHeap && !concurrent) {
+                     // First, so that the stored records precede the other pending values.
+                     createOffHeapStore(fieldOutline, outline);
+                     time = metrics.record("createOffHeapStore", time);
+                  }
                   createListWithMethod(fieldOutline);
+                  time = metrics.record("createListWithMethod", time);
                   createListWithNewMethod(fieldOutline);
+                  time = metrics.record("createListWithNewMethod", time);
+                  if (batch) {
+                     createListWithNewArrayMethod(fieldOutline);
+                     time = metrics.record("createListWithNewArrayMethod", time);
+                  }
+                  if (bulk) {
+                     createListWithAllMethod(fieldOutline);
+                     time = metrics.record("createListWithAllMethod", time);
+                     createListAdoptMethod(fieldOutline);
+                     time = metrics.record("createListAdoptMethod", time);
+                  }
+                  if (peek) {
+                     createListPeekMethod(fieldOutline);
+                     time = metrics.record("createListPeekMethod", time);
+                  }
+                  if (stream) {
+                     createListStreamMethods(fieldOutline);
+                     time = metrics.record("createListStreamMethods", time);
+                  }
+                  if (listener) {
+                     createListListenerMethod(fieldOutline);
+                     time = metrics.record("createListListenerMethod", time);
+                  }
+                  break;
+               case PRIMITIVE_LIST:
+                  if (primitive) {
+                     createPrimitiveListMethods(fieldOutline);
+                     time = metrics.record("createPrimitiveListMethods", time);
+                  }
                   break;
                case OTHER:
                default:
                   break;
             }
          }
+         if (reset) {
+            createClearMethod(classOutline, false);
+            time = metrics.record("createClearMethod", time);
+         }
+         if (deepCopy) {
+            createCopyMethods(classOutline);
+            time = metrics.record("createCopyMethods", time);
+         }
+         if (compact) {
+            createCompactMethods(classOutline);
+            time = metrics.record("createCompactMethods", time);
+         }
+         if (chain) {
+            createChainedSetters(classOutline);
+            time = metrics.record("createChainedSetters", time);
+         }
+         if (builder && isManagedClass(classOutline.implClass)) {
+            createBuilder(classOutline);
+            time = metrics.record("createBuilder", time);
+         }
+         if (fork) {
+            createForkMethods(classOutline);
+            time = metrics.record("createForkMethods", time);
+         }
+         if (pool) {
+            createPoolMethods(classOutline);
+            time = metrics.record("createPoolMethods", time);
+         }
+         metrics.recordClass(classOutline.implClass.fullName(), classOutline.implClass.methods().size()
+            - classMethods, classStart);
+      }
+      linkFlushMethods(outline);
+      time = metrics.record("linkFlushMethods", time);
+      createEmptyInstances(outline);
+      metrics.record("createEmptyInstances", time);
+      metrics.stop();
+      if (metricsFile != null) {
+         writeMetrics(metrics, options, errorHandler);
       }
       return false;
    }
 
+   /**
+    * Writes the generation metrics report. An unwritable report is reported
+    * as a warning.
+    * @param metrics - the metrics of the run.
+    * @param options - the XJC options.
+    * @param errorHandler - the XJC error handler.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private void writeMetrics(GenerationMetrics metrics, Options options, ErrorHandler errorHandler)
+      throws SAXException {
+      try {
+         metrics.write(metricsFile);
+         if (options.verbose) {
+            System.out.println("[fluent-api-ext] metrics written to " + metricsFile);
+         }
+      } catch (IOException e) {
+         errorHandler.warning(new SAXParseException("Cannot write the fluent API metrics " + metricsFile + ": "
+            + e.getMessage(), null, e));
+      }
+   }
+
+   /** Result of the analysis of a field type. */
+   private static final class TypeAnalysis {
+      /** The field type. */
+      private final FieldType fieldType;
+      /** The element class of a {@link FieldType#MANAGED_LIST}, null else. */
+      private final JClass elementClass;
+
+      /**
+       * Constructor.
+       * @param fieldType - the field type.
+       * @param elementClass - the element class, or null.
+       */
+      private TypeAnalysis(FieldType fieldType, JClass elementClass) {
+         this.fieldType = fieldType;
+         this.elementClass = elementClass;
+      }
+   }
+
    /** Field type. */
    private static enum FieldType {
       /** JAXB generated class. */
       MANAGED_FIELD,
       /** List of JAXB generated class. */
       MANAGED_LIST,
+      /** List of primitive wrappers. */
+      PRIMITIVE_LIST,
       /** Other */
       OTHER
    }
 
+   /**
+    * Loads the index file. An unreadable index is reported as a warning and
+    * ignored.
+    * @param errorHandler - the XJC error handler.
+    * @return the index, or null if it cannot be read.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private FingerprintIndex loadIndex(ErrorHandler errorHandler) throws SAXException {
+      try {
+         return FingerprintIndex.load(indexFile);
+      } catch (IOException e) {
+         errorHandler.warning(new SAXParseException("Cannot read the fluent API index " + indexFile + ": "
+            + e.getMessage(), null, e));
+         return null;
+      }
+   }
+
+   /**
+    * Records the field types of the classes in the index and writes it if it
+    * changed. An unwritable index is reported as a warning.
+    * @param index - the index.
+    * @param classOutlines - the classes.
+    * @param fingerprints - the fingerprints of the classes.
+    * @param options - the XJC options.
+    * @param errorHandler - the XJC error handler.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private void storeIndex(FingerprintIndex index, List<ClassOutline> classOutlines,
+      Map<ClassOutline, String> fingerprints, Options options, ErrorHandler errorHandler) throws SAXException {
+      for (ClassOutline classOutline : classOutlines) {
+         FieldOutline[] fieldOutlines = classOutline.getDeclaredFields();
+         String[] types = new String[fieldOutlines.length];
+         for (int i = 0; i < fieldOutlines.length; i++) {
+            types[i] = fieldTypes.get(fieldOutlines[i]).name();
+         }
+         index.put(classOutline.implClass.fullName(), fingerprints.get(classOutline), types);
+      }
+      try {
+         boolean written = index.store();
+         if (options.verbose) {
+            System.out.println("[fluent-api-ext] " + indexFile + (written ? " updated" : " unchanged"));
+         }
+      } catch (IOException e) {
+         errorHandler.warning(new SAXParseException("Cannot write the fluent API index " + indexFile + ": "
+            + e.getMessage(), null, e));
+      }
+   }
+
+   /**
+    * Stores the field types recorded by a previous run, if they match the
+    * fields of the class.
+    * @param classOutline - the class.
+    * @param types - the names of the recorded field types, or null.
+    * @return true if the field types have been reused.
+    */
+   private boolean reuseFieldTypes(ClassOutline classOutline, String[] types) {
+      FieldOutline[] fieldOutlines = classOutline.getDeclaredFields();
+      if (types == null || types.length != fieldOutlines.length) {
+         return false;
+      }
+      FieldType[] fieldTypeValues = new FieldType[types.length];
+      for (int i = 0; i < types.length; i++) {
+         try {
+            fieldTypeValues[i] = FieldType.valueOf(types[i]);
+         } catch (IllegalArgumentException e) {
+            return false;
+         }
+      }
+      for (int i = 0; i < fieldOutlines.length; i++) {
+         fieldTypes.put(fieldOutlines[i], fieldTypeValues[i]);
+      }
+      return true;
+   }
+
+   /**
+    * Returns the structural fingerprint of a class. It covers everything the
+    * analysis of its fields depends on: the kind, the super class and the
+    * constructors of the class, and the name and type of its fields, along
+    * with the kind and the constructors of the generated classes they refer
+    * to.
+    * @param index - the index computing the fingerprint.
+    * @param classOutline - the class.
+    * @return the fingerprint.
+    */
+   private String getFingerprint(FingerprintIndex index, ClassOutline classOutline) {
+      StringBuilder structure = new StringBuilder();
+      // The recorded field types are stale once a new type is classified.
+      structure.append(Arrays.toString(FieldType.values())).append(' ');
+      appendStructure(structure, classOutline.implClass);
+      structure.append(" extends ").append(classOutline.implClass._extends().fullName());
+      for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+         JClass jClass = getBoxedType(fieldOutline);
+         structure.append(';').append(fieldOutline.getPropertyInfo().getName(false)).append(' ');
+         appendStructure(structure, jClass);
+         for (JClass typeParameter : jClass.getTypeParameters()) {
+            structure.append('<');
+            appendStructure(structure, typeParameter);
+            structure.append('>');
+         }
+      }
+      return index.fingerprint(structure.toString());
+   }
+
+   /**
+    * Appends the name of the class and, for a generated class, its kind and
+    * the number of parameters of its constructors.
+    * @param structure - the structure description.
+    * @param jClass - the class.
+    */
+   private void appendStructure(StringBuilder structure, JClass jClass) {
+      structure.append(jClass.fullName());
+      if (jClass instanceof JDefinedClass) {
+         JDefinedClass definedClass = (JDefinedClass) jClass;
+         final ClassType classType = definedClass.getClassType();
+         structure.append(ClassType.CLASS.equals(classType) ? "[class" : ClassType.ENUM.equals(classType) ? "[enum"
+            : "[interface");
+         structure.append(definedClass.isAbstract() ? " abstract" : "");
+         for (Iterator<JMethod> constructors = definedClass.constructors(); constructors.hasNext();) {
+            structure.append(' ').append(constructors.next().listParams().length);
+         }
+         structure.append(']');
+      }
+   }
+
+   /**
+    * Analyzes the fields of the classes with one task per class, spread over
+    * a pool of one thread per available processor, and stores the results in
+    * {@link #fieldTypes}.
+    * @param classOutlines - the classes to analyze.
+    * @throws SAXException if an analysis fails or is interrupted.
+    */
+   private void analyzeFieldsInParallel(List<ClassOutline> classOutlines) throws SAXException {
+      ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+      try {
+         List<Future<FieldType[]>> futures = new ArrayList<Future<FieldType[]>>(classOutlines.size());
+         for (final ClassOutline classOutline : classOutlines) {
+            futures.add(executor.submit(new Callable<FieldType[]>() {
+               public FieldType[] call() {
+                  FieldOutline[] fieldOutlines = classOutline.getDeclaredFields();
+                  FieldType[] types = new FieldType[fieldOutlines.length];
+                  for (int i = 0; i < fieldOutlines.length; i++) {
+                     types[i] = getFieldType(fieldOutlines[i]);
+                  }
+                  return types;
+               }
+            }));
+         }
+         for (int i = 0; i < classOutlines.size(); i++) {
+            FieldOutline[] fieldOutlines = classOutlines.get(i).getDeclaredFields();
+            FieldType[] types = futures.get(i).get();
+            for (int j = 0; j < fieldOutlines.length; j++) {
+               fieldTypes.put(fieldOutlines[j], types[j]);
+            }
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SAXException(e);
+      } catch (ExecutionException e) {
+         // The analysis throws no checked exception.
+         if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+         }
+         throw (RuntimeException) e.getCause();
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
    /**
     * Analyzes the field and returns:
     * <ul>
@@ -102,13 +836,75 @@ public final class FluentApiExtPlugin extends Plugin {
     * {@link #isManagedList(JClass)}.
     * <li>{@link FieldType#OTHER} else.
     * </ul>
+    * The analysis of the type of the field is cached, see
+    * {@link #analyzeType(JClass)}.
     * @param fieldOutline - the field.
     * @return the type of the field.
     */
    private FieldType getFieldType(FieldOutline fieldOutline) {
-      JClass jClass = fieldOutline.getRawType().boxify();
-      return isManagedClass(jClass) ? FieldType.MANAGED_FIELD : isManagedList(jClass) ? FieldType.MANAGED_LIST
-         : FieldType.OTHER;
+      return analyzeType(getBoxedType(fieldOutline)).fieldType;
+   }
+
+   /**
+    * Returns the element class of a {@link FieldType#MANAGED_LIST} or
+    * {@link FieldType#PRIMITIVE_LIST} field, as found by the analysis of the
+    * field. The fields of the classes reused from the index are not
+    * analyzed: the element class of a field declared as {@link List} is its
+    * type parameter.
+    * @param fieldOutline - the field.
+    * @return the element class.
+    */
+   private JClass getElementClass(FieldOutline fieldOutline) {
+      final JClass jClass = getBoxedType(fieldOutline);
+      TypeAnalysis analysis = typeAnalyses.get(jClass);
+      if (analysis != null) {
+         return analysis.elementClass;
+      }
+      if (isListInterface(jClass) && jClass.getTypeParameters().size() == 1) {
+         return jClass.getTypeParameters().get(0);
+      }
+      return analyzeType(jClass).elementClass;
+   }
+
+   /**
+    * Returns the boxed raw type of the field. Boxing may register the wrapper
+    * class in the code model, so it is serialized on the code model during
+    * the parallel analysis.
+    * @param fieldOutline - the field.
+    * @return the boxed type.
+    */
+   private JClass getBoxedType(FieldOutline fieldOutline) {
+      final JType rawType = fieldOutline.getRawType();
+      synchronized (rawType.owner()) {
+         return rawType.boxify();
+      }
+   }
+
+   /**
+    * Analyzes a field type, see {@link #getFieldType(FieldOutline)}. The
+    * analyses are cached for the current run, as the same types are usually
+    * referenced by many fields.
+    * @param jClass - the boxed type of a field.
+    * @return the analysis of the type.
+    */
+   private TypeAnalysis analyzeType(JClass jClass) {
+      TypeAnalysis analysis = typeAnalyses.get(jClass);
+      if (analysis != null) {
+         typeAnalysisHits.incrementAndGet();
+         return analysis;
+      }
+      typeAnalysisMisses.incrementAndGet();
+      if (isManagedClass(jClass)) {
+         analysis = new TypeAnalysis(FieldType.MANAGED_FIELD, null);
+      } else if (isManagedList(jClass)) {
+         analysis = new TypeAnalysis(FieldType.MANAGED_LIST, getListClass(jClass).getTypeParameters().get(0));
+      } else if (isPrimitiveList(jClass)) {
+         analysis = new TypeAnalysis(FieldType.PRIMITIVE_LIST, getListClass(jClass).getTypeParameters().get(0));
+      } else {
+         analysis = new TypeAnalysis(FieldType.OTHER, null);
+      }
+      TypeAnalysis previous = typeAnalyses.putIfAbsent(jClass, analysis);
+      return previous != null ? previous : analysis;
    }
 
    /**
@@ -145,14 +941,140 @@ public final class FluentApiExtPlugin extends Plugin {
     * The {@link JClass} object is a list if:
     * <ul>
     * <li>the class is a {@link List}.
-    * <li>the class implements {@link List}.
+    * <li>the class implements {@link List}, directly or through its super
+    * types.
     * </ul>
     * @param jClass - the {@link JClass} to anayze.
     * @return true if the {@link JClass} object is or extends {@link List}.
     */
    private boolean isList(JClass jClass) {
-      // XXX Not recursive implementation. Only check base class.
-      return jClass.getBaseClass(List.class) != null;
+      return getListClass(jClass) != null;
+   }
+
+   /**
+    * Returns the {@link List} base class of the {@link JClass} object, with
+    * its element type. The code model only knows the raw super types of the
+    * compiled classes, so the element type defaults to {@link Object} when it
+    * is lost on the way. The lookup may register new classes in the code
+    * model, so it is serialized on the code model during the parallel
+    * analysis.
+    * @param jClass - the {@link JClass} to analyze.
+    * @return the {@link List} base class, or null if the class is not a list.
+    */
+   private JClass getListClass(JClass jClass) {
+      final JCodeModel codeModel = jClass.owner();
+      synchronized (codeModel) {
+         JClass listClass = jClass.getBaseClass(List.class);
+         if (listClass != null && listClass.getTypeParameters().isEmpty()) {
+            listClass = codeModel.ref(List.class).narrow(Object.class);
+         }
+         return listClass;
+      }
+   }
+
+   /**
+    * Tells whether the type is declared as {@link List} itself, as the XJC
+    * list fields are, rather than as one of its implementations.
+    * @param type - the declared type of a list.
+    * @return true if the runtime type of the list is unknown.
+    */
+   private boolean isListInterface(JType type) {
+      return type.erasure().fullName().equals(List.class.getName());
+   }
+
+   /**
+    * Returns the collection type of the XJC bindings of a list field when it
+    * is not one of the list implementations handled by the generated code
+    * anyway, that is {@link ArrayList}, {@link Vector} and {@link LinkedList}
+    * (see {@link #getListImplementation(FieldOutline)}).
+    * @param fieldOutline - the field outline of the list.
+    * @return the erasure of the custom list class, or null.
+    */
+   private JClass getCustomListClass(FieldOutline fieldOutline) {
+      if (!isListInterface(fieldOutline.getRawType())) {
+         return null;
+      }
+      final JClass listClass = getListImplementation(fieldOutline);
+      if (listClass == null) {
+         return null;
+      }
+      final String className = listClass.erasure().fullName();
+      if (className.equals(ArrayList.class.getName()) || className.equals(Vector.class.getName())
+         || className.equals(LinkedList.class.getName())) {
+         return null;
+      }
+      return listClass.erasure();
+   }
+
+   /**
+    * Loads the class of a {@link JClass} object, if it is a compiled class.
+    * The classes compiled with the generated code, like a collection type of
+    * the same module, cannot be loaded: their methods are not used, which is
+    * reported once in verbose mode.
+    * @param jClass - the {@link JClass} object.
+    * @return the loaded class, or null if the class is generated or cannot be
+    *         loaded.
+    */
+   private Class<?> loadClass(JClass jClass) {
+      if (jClass.erasure() instanceof JDefinedClass) {
+         return null;
+      }
+      final String className = jClass.erasure().binaryName();
+      try {
+         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+         return Class.forName(className, false, classLoader != null ? classLoader : getClass().getClassLoader());
+      } catch (ClassNotFoundException e) {
+         reportUnloadedClass(className);
+         return null;
+      } catch (LinkageError e) {
+         reportUnloadedClass(className);
+         return null;
+      }
+   }
+
+   /**
+    * Reports, once in verbose mode, a class which cannot be loaded by
+    * {@link #loadClass(JClass)}.
+    * @param className - the binary name of the class.
+    */
+   private void reportUnloadedClass(String className) {
+      if (verbose && unloadedClasses.add(className)) {
+         System.out.println("[fluent-api-ext] " + className + " cannot be loaded while generating: its"
+            + " ensureCapacity(int) and (int) constructor, if any, are not used");
+      }
+   }
+
+   /**
+    * Tells whether a list class has a public <code>ensureCapacity(int)</code>
+    * method, like {@link ArrayList}. The classes which cannot be loaded while
+    * generating are assumed not to have it.
+    * @param type - the list type.
+    * @return true if the lists of this class can be pre-sized.
+    */
+   private boolean hasEnsureCapacity(JType type) {
+      final Class<?> loadedClass = type instanceof JClass ? loadClass((JClass) type) : null;
+      if (loadedClass == null) {
+         return false;
+      }
+      try {
+         return !Modifier.isStatic(loadedClass.getMethod("ensureCapacity", int.class).getModifiers());
+      } catch (NoSuchMethodException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Returns the cast of a list to its class, narrowed to the element class
+    * if the class is generic.
+    * @param listClass - the erasure of the list class.
+    * @param list - the list.
+    * @param elementClass - the class of the list elements.
+    * @return the cast expression.
+    */
+   private JExpression castList(JClass listClass, JExpression list, JClass elementClass) {
+      final Class<?> loadedClass = loadClass(listClass);
+      final boolean generic = loadedClass == null || loadedClass.getTypeParameters().length > 0;
+      return JExpr.cast(generic ? listClass.narrow(elementClass) : listClass, list);
    }
 
    /**
@@ -166,7 +1088,20 @@ public final class FluentApiExtPlugin extends Plugin {
     * @return true if it is a managed list.
     */
    private boolean isManagedList(JClass jClass) {
-      return isList(jClass) && isManagedClass(jClass.getBaseClass(List.class).getTypeParameters().get(0));
+      return isList(jClass) && isManagedClass(getListClass(jClass).getTypeParameters().get(0));
+   }
+
+   /**
+    * The {@link JClass} object is a primitive list if:
+    * <ul>
+    * <li>the class is a list (see {@link #isList(JClass)}).
+    * <li>the parameter type is a primitive wrapper.
+    * </ul>
+    * @param jClass - the class object.
+    * @return true if it is a primitive list.
+    */
+   private boolean isPrimitiveList(JClass jClass) {
+      return isList(jClass) && getListClass(jClass).getTypeParameters().get(0).unboxify().isPrimitive();
    }
 
    /**
@@ -187,43 +1122,152 @@ public final class FluentApiExtPlugin extends Plugin {
     * }
     * //...
     * </pre>
+    * <p>
+    * With the {@value #FORK_OPTION} option, a child shared with a fork is
+    * forked first, see {@link #createUnshareField(JBlock, FieldOutline)}.
     * @param fieldOutline - the field outline.
     */
    protected void createWithMethod(FieldOutline fieldOutline) {
+      if (threadSafe) {
+         createThreadSafeWithMethod(fieldOutline);
+         return;
+      }
       final JDefinedClass implClass = fieldOutline.parent().implClass;
       final String fieldName = fieldOutline.getPropertyInfo().getName(false);
       final String propertyName = fieldOutline.getPropertyInfo().getName(true);
 
-      JMethod method = implClass.method(JMod.PUBLIC, fieldOutline.getRawType(), "with" + propertyName);
+      JMethod method = createMutatorMethod(implClass, fieldOutline.getRawType(), "with" + propertyName);
 
       JBlock body = method.body();
+      createUnshareField(body, fieldOutline);
 
       JConditional _if = body._if(JExpr.refthis(fieldName).eq(JExpr._null()));
       JBlock _then = _if._then();
-      _then.assign(JExpr.ref(fieldName), JExpr._new(fieldOutline.getRawType()));
+      _then.assign(JExpr.ref(fieldName), createNewInstance(fieldOutline.getRawType().boxify()));
 
       body._return(JExpr.ref(fieldName));
    }
 
    /**
     * <p>
-    * Generates the <code>with&lt;property&gt;(int i)</code> method. The
-    * generated body method looks like:
+    * Generates the <code>peek&lt;property&gt;()</code> method, which reads a
+    * managed child without creating it: a missing child is read as the
+    * shared empty instance of its class (see
+    * {@link #createEmptyInstances(Outline)}), so reading a sparse document
+    * neither allocates nor adds empty elements to it. The generated body
+    * method looks like:
     * 
     * <pre>
     * //...
-    * PropertyClass property;
-    * 
+    * public PropertyClass peekProperty() {
+    *    PropertyClass value = this.property;
+    *    return ((value == null) ? PropertyClass.FLUENT_EMPTY : value);
+    * }
     * //...
-    * public PropertyClass withItem(int index) {
-    *    List&lt;PropertyClass&gt; list = this.getItem();
-    *    if (list.size() &lt;= index) {
-    *       for (int i = list.size(); (i &lt;= index); i++) {
-    *          list.add(null);
-    *       }
-    *    }
-    *    PropertyClass value = list.get(index);
-    *    if (value == null) {
+    * </pre>
+    * <p>
+    * The method is generated with the {@value #PEEK_OPTION} option, for the
+    * children of the generated classes only.
+    * @param fieldOutline - the field outline.
+    */
+   protected void createPeekMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JType rawType = fieldOutline.getRawType();
+      if (!outlineClasses.contains(rawType)) {
+         return;
+      }
+      emptyClasses.add((JDefinedClass) rawType);
+
+      JMethod method = implClass.method(JMod.PUBLIC, rawType, "peek" + propertyName);
+      JBlock body = method.body();
+      JVar value = body.decl(rawType, "value", JExpr.refthis(fieldName));
+      body._return(JOp.cond(value.eq(JExpr._null()), ((JClass) rawType).staticRef("FLUENT_EMPTY"), value));
+   }
+
+   /**
+    * <p>
+    * Generates the thread-safe <code>with&lt;property&gt;()</code> method.
+    * Concurrent calls return the same instance, and the instance is safely
+    * published: the read path takes no lock once the field is initialized.
+    * The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * private transient volatile boolean propertyPublished;
+    * 
+    * //...
+    * public PropertyClass withProperty() {
+    *    if (this.propertyPublished) {
+    *       PropertyClass value = this.property;
+    *       if (value != null) {
+    *          return value;
+    *       }
+    *    }
+    *    return this.fluentInitProperty();
+    * }
+    * 
+    * private synchronized PropertyClass fluentInitProperty() {
+    *    if (this.property == null) {
+    *       this.property = new PropertyClass();
+    *    }
+    *    this.propertyPublished = true;
+    *    return this.property;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The JAXB field itself cannot be made volatile through the code model, so
+    * the volatile flag orders the initialization of the field before its
+    * unsynchronized reads. A fork clears the flag of the shared children, so
+    * they are forked by <code>fluentInitProperty()</code>.
+    * @param fieldOutline - the field outline.
+    */
+   private void createThreadSafeWithMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JType rawType = fieldOutline.getRawType();
+
+      JFieldVar published = implClass.field(JMod.PRIVATE | JMod.TRANSIENT | JMod.VOLATILE, implClass.owner().BOOLEAN,
+         fieldName + "Published");
+
+      JMethod init = implClass.method(JMod.PRIVATE | JMod.SYNCHRONIZED, rawType, "fluentInit" + propertyName);
+      JBlock initBody = init.body();
+      createUnshareField(initBody, fieldOutline);
+      initBody._if(JExpr.refthis(fieldName).eq(JExpr._null()))._then().assign(JExpr.refthis(fieldName),
+         createNewInstance(rawType.boxify()));
+      initBody.assign(JExpr._this().ref(published), JExpr.TRUE);
+      initBody._return(JExpr.refthis(fieldName));
+
+      JMethod method = createMutatorMethod(implClass, rawType, "with" + propertyName);
+      JBlock body = method.body();
+      JBlock _ifPublished = body._if(JExpr._this().ref(published))._then();
+      JVar value = _ifPublished.decl(rawType, "value", JExpr.refthis(fieldName));
+      _ifPublished._if(value.ne(JExpr._null()))._then()._return(value);
+      body._return(JExpr._this().invoke(init));
+   }
+
+   /**
+    * <p>
+    * Generates the <code>with&lt;property&gt;(int i)</code> method. The
+    * generated body method looks like:
+    * 
+    * <pre>
+    * //...
+    * PropertyClass property;
+    * 
+    * //...
+    * public PropertyClass withItem(int index) {
+    *    List&lt;PropertyClass&gt; list = this.getItem();
+    *    if (list.size() &lt;= index) {
+    *       for (int i = list.size(); (i &lt;= index); i++) {
+    *          list.add(null);
+    *       }
+    *    }
+    *    PropertyClass value = list.get(index);
+    *    if (value == null) {
     *       value = new PropertyClass();
     *       list.set(index, value);
     *    }
@@ -231,69 +1275,3117 @@ public final class FluentApiExtPlugin extends Plugin {
     * }
     * //...
     * </pre>
+    * <p>
+    * With the {@value #PRESIZE_OPTION} option, the padding loop is only kept
+    * for unknown list types (see
+    * {@link #createPresizeList(JBlock, FieldOutline, JVar, JVar, JVar, JClass)}). With the
+    * {@value #SPARSE_OPTION} option, the method is generated by
+    * {@link #createSparseListWithMethod(FieldOutline)}. With the
+    * {@value #FORK_OPTION} option, an element shared with a fork is forked
+    * first, see {@link #createUnshareElement(JBlock, FieldOutline, JVar, JVar, JVar)}.
     * @param fieldOutline
     */
    protected void createListWithMethod(FieldOutline fieldOutline) {
+      if (sparse) {
+         createSparseListWithMethod(fieldOutline);
+         return;
+      }
       final JDefinedClass implClass = fieldOutline.parent().implClass;
       final String propertyName = fieldOutline.getPropertyInfo().getName(true);
-      final JClass elementClass = fieldOutline.getRawType().boxify().getTypeParameters().get(0);
+      final JClass elementClass = getElementClass(fieldOutline);
       final JPrimitiveType INT = fieldOutline.parent().parent().getCodeModel().INT;
 
-      JMethod method = implClass.method(JMod.PUBLIC, elementClass, "with" + propertyName);
+      JMethod method = createMutatorMethod(implClass, elementClass, "with" + propertyName);
       JVar index = method.param(INT, "index");
 
       JBlock body = method.body();
 
       JVar list = body.decl(fieldOutline.getRawType(), "list", JExpr._this().invoke("get" + propertyName));
-      JConditional _ifListIsTooSmall = body._if(list.invoke("size").lte(index));
-      JBlock _ifListIsTooSmallThen = _ifListIsTooSmall._then();
-      JForLoop _for = _ifListIsTooSmallThen._for();
-      JVar i = _for.init(INT, "i", list.invoke("size"));
-      _for.test(i.lte(index));
-      _for.update(i.incr());
-      _for.body().invoke(list, "add").arg(JExpr._null());
+      if (presize) {
+         JVar size = body.decl(INT, "size", list.invoke("size"));
+         JConditional _ifListIsTooSmall = body._if(size.lte(index));
+         createPresizeList(_ifListIsTooSmall._then(), fieldOutline, list, size, index, elementClass);
+      } else {
+         JConditional _ifListIsTooSmall = body._if(list.invoke("size").lte(index));
+         JBlock _ifListIsTooSmallThen = _ifListIsTooSmall._then();
+         JForLoop _for = _ifListIsTooSmallThen._for();
+         JVar i = _for.init(INT, "i", list.invoke("size"));
+         _for.test(i.lte(index));
+         _for.update(i.incr());
+         _for.body().invoke(list, "add").arg(JExpr._null());
+      }
 
       JVar element = body.decl(elementClass, "value", list.invoke("get").arg(index));
       JConditional _ifElementIsNull = body._if(element.eq(JExpr._null()));
       JBlock _ifElementIsNullThen = _ifElementIsNull._then();
-      _ifElementIsNullThen.assign(element, JExpr._new(element.type()));
+      _ifElementIsNullThen.assign(element, createNewInstance(elementClass));
       _ifElementIsNullThen.invoke(list, "set").arg(index).arg(element);
+      createUnshareElement(_ifElementIsNull._else(), fieldOutline, list, index, element);
 
       body._return(element);
    }
 
    /**
     * <p>
-    * Generates the <code>withNew&lt;property&gt;()</code> method. The generated
-    * body method looks like:
+    * Generates the <code>with&lt;property&gt;(int i)</code> method backed by a
+    * sparse map. The values are moved into the JAXB list by the getter, or
+    * before marshalling (see {@link #getFlushMethod(JDefinedClass)}), so the
+    * memory used until then is proportional to the number of touched indexes.
+    * The generated code looks like:
     * 
     * <pre>
     * //...
-    * PropertyClass property;
+    * private transient SortedMap&lt;Integer, PropertyClass&gt; itemSparse;
     * 
     * //...
-    * public PropertyClass withNewItem() {
-    *    PropertyClass value = new PropertyClass();
-    *    this.getItem().add(value);
+    * public List&lt;PropertyClass&gt; getItem() {
+    *    if (item == null) {
+    *       item = new ArrayList&lt;PropertyClass&gt;();
+    *    }
+    *    if (this.itemSparse != null) {
+    *       SortedMap&lt;Integer, PropertyClass&gt; sparse = this.itemSparse;
+    *       this.itemSparse = null;
+    *       List&lt;PropertyClass&gt; list = this.item;
+    *       int size = list.size();
+    *       int last = sparse.lastKey();
+    *       if (size &lt;= last) {
+    *          // pads the list up to last
+    *       }
+    *       for (Entry&lt;Integer, PropertyClass&gt; entry : sparse.entrySet()) {
+    *          list.set(entry.getKey(), entry.getValue());
+    *       }
+    *    }
+    *    return this.item;
+    * }
+    * 
+    * //...
+    * public PropertyClass withItem(int index) {
+    *    if (this.fluentHasPendingItem()) {
+    *       this.getItem();
+    *    }
+    *    List&lt;PropertyClass&gt; list = this.item;
+    *    if ((list != null) &amp;&amp; (index &lt; list.size())) {
+    *       PropertyClass current = list.get(index);
+    *       if (current != null) {
+    *          return current;
+    *       }
+    *    }
+    *    if (this.itemSparse == null) {
+    *       this.itemSparse = new TreeMap&lt;Integer, PropertyClass&gt;();
+    *    }
+    *    PropertyClass value = this.itemSparse.get(index);
+    *    if (value == null) {
+    *       value = new PropertyClass();
+    *       this.itemSparse.put(index, value);
+    *    }
     *    return value;
     * }
     * //...
     * </pre>
-    * @param fieldOutline
+    * <p>
+    * The values appended to the pending queue of the
+    * {@value #CONCURRENT_OPTION} option, as above, or to the off-heap store
+    * of the {@value #OFF_HEAP_OPTION} option are moved into the list first.
+    * @param fieldOutline - the field outline.
     */
-   protected void createListWithNewMethod(FieldOutline fieldOutline) {
+   protected void createSparseListWithMethod(FieldOutline fieldOutline) {
       final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
       final String propertyName = fieldOutline.getPropertyInfo().getName(true);
-      final JClass elementClass = fieldOutline.getRawType().boxify().getTypeParameters().get(0);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+      final JClass mapClass = codeModel.ref(SortedMap.class).narrow(codeModel.ref(Integer.class), elementClass);
+
+      JFieldVar sparseField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, mapClass, fieldName + "Sparse");
+
+      // Getter: moves the sparse values into the list.
+      JBlock merge = createGetterHook(fieldOutline, JExpr.refthis(sparseField.name()).ne(JExpr._null()));
+      JVar map = merge.decl(mapClass, "sparse", JExpr.refthis(sparseField.name()));
+      merge.assign(JExpr.refthis(sparseField.name()), JExpr._null());
+      JVar list = merge.decl(fieldOutline.getRawType(), "list", JExpr.refthis(fieldName));
+      JVar size = merge.decl(codeModel.INT, "size", list.invoke("size"));
+      JVar last = merge.decl(codeModel.INT, "last", map.invoke("lastKey"));
+      JBlock _ifListIsTooSmallThen = merge._if(size.lte(last))._then();
+      if (presize) {
+         createPresizeList(_ifListIsTooSmallThen, fieldOutline, list, size, last, elementClass);
+      } else {
+         JForLoop _for = _ifListIsTooSmallThen._for();
+         JVar i = _for.init(codeModel.INT, "i", size);
+         _for.test(i.lte(last));
+         _for.update(i.incr());
+         _for.body().invoke(list, "add").arg(JExpr._null());
+      }
+      JClass entryClass = codeModel.ref(Map.Entry.class).narrow(codeModel.ref(Integer.class), elementClass);
+      JForEach _forEach = merge.forEach(entryClass, "entry", map.invoke("entrySet"));
+      _forEach.body().invoke(list, "set").arg(_forEach.var().invoke("getKey")).arg(_forEach.var().invoke("getValue"));
+
+      // Flush: reading the list is enough.
+      getFlushMethod(implClass).body()._if(JExpr.refthis(sparseField.name()).ne(JExpr._null()))._then().invoke(
+         "get" + propertyName);
 
-      JMethod method = implClass.method(JMod.PUBLIC, elementClass, "withNew" + propertyName);
+      // Indexed accessor.
+      JMethod method = createMutatorMethod(implClass, elementClass, "with" + propertyName);
+      JVar index = method.param(codeModel.INT, "index");
 
       JBlock body = method.body();
 
-      JVar element = body.decl(elementClass, "value", JExpr._new(elementClass));
+      if (sharedFlags.containsKey(fieldOutline)) {
+         // Reading the list unshares it.
+         body._if(JExpr._this().ref(sharedFlags.get(fieldOutline)))._then().invoke("get" + propertyName);
+      }
+      // Reading the list also moves the values appended by withNew*() into
+      // it, so their indexes are not given to new sparse values.
+      if (offHeapStores.containsKey(fieldOutline)) {
+         body._if(JExpr.refthis(fieldName + "StoreSize").gt(JExpr.lit(0)))._then().invoke("get" + propertyName);
+      } else if (concurrent) {
+         getPendingQueue(fieldOutline);
+         body._if(hasPendingValues(fieldOutline))._then().invoke("get" + propertyName);
+      }
+      JVar current = body.decl(fieldOutline.getRawType(), "list", JExpr.refthis(fieldName));
+      JBlock _ifInListThen = body._if(current.ne(JExpr._null()).cand(index.lt(current.invoke("size"))))._then();
+      JVar currentElement = _ifInListThen.decl(elementClass, "current", current.invoke("get").arg(index));
+      JBlock _ifCurrentThen = _ifInListThen._if(currentElement.ne(JExpr._null()))._then();
+      createUnshareElement(_ifCurrentThen, fieldOutline, current, index, currentElement);
+      _ifCurrentThen._return(currentElement);
+
+      body._if(JExpr.refthis(sparseField.name()).eq(JExpr._null()))._then().assign(JExpr.refthis(sparseField.name()),
+         JExpr._new(codeModel.ref(TreeMap.class).narrow(codeModel.ref(Integer.class), elementClass)));
 
-      body.invoke(JExpr._this().invoke("get" + propertyName), "add").arg(element);
+      JVar element = body.decl(elementClass, "value", JExpr.refthis(sparseField.name()).invoke("get").arg(index));
+      JConditional _ifElementIsNull = body._if(element.eq(JExpr._null()));
+      JBlock _ifElementIsNullThen = _ifElementIsNull._then();
+      _ifElementIsNullThen.assign(element, createNewInstance(elementClass));
+      _ifElementIsNullThen.invoke(JExpr.refthis(sparseField.name()), "put").arg(index).arg(element);
 
       body._return(element);
    }
+
+   /**
+    * Creates a public method writing the fields of the class. The empty
+    * instances override these methods, see
+    * {@link #createEmptyInstances(Outline)}.
+    * @param implClass - the class.
+    * @param type - the return type.
+    * @param name - the method name.
+    * @return the method.
+    */
+   private JMethod createMutatorMethod(JDefinedClass implClass, JType type, String name) {
+      JMethod method = implClass.method(JMod.PUBLIC, type, name);
+      List<JMethod> methods = mutatorMethods.get(implClass);
+      if (methods == null) {
+         methods = new ArrayList<JMethod>();
+         mutatorMethods.put(implClass, methods);
+      }
+      methods.add(method);
+      return method;
+   }
+
+   /**
+    * Returns the expression creating a new instance of a managed class:
+    * <code>PropertyClass.fluentAcquire()</code> with the {@value #POOL_OPTION}
+    * option, <code>new PropertyClass()</code> else.
+    * @param jClass - the managed class.
+    * @return the expression.
+    */
+   private JExpression createNewInstance(JClass jClass) {
+      if (pool && outlineClasses.contains(jClass)) {
+         return jClass.staticInvoke("fluentAcquire");
+      }
+      return JExpr._new(jClass);
+   }
+
+   /**
+    * <p>
+    * Generates the pool methods of the class. The <code>with*</code> methods
+    * take their new instances from the pool of the instantiated class (see
+    * {@link #createNewInstance(JClass)}) and <code>fluentRecycle()</code>
+    * gives back an instance and its managed children to their pools. A
+    * recycled instance must not be used anymore. The pools implement the
+    * <code>FluentPool</code> interface generated once per package, and are
+    * set by the application with <code>fluentSetPool()</code>: without pool,
+    * the default, the instances are allocated and left to the garbage
+    * collector, so the generated code holds no thread local and no instance
+    * between two calls. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public interface FluentPool&lt;T&gt; {
+    *    T acquire();
+    * 
+    *    void release(T value);
+    * }
+    * 
+    * //...
+    * private static volatile FluentPool&lt;ShipTo&gt; fluentPool;
+    * 
+    * public static void fluentSetPool(FluentPool&lt;ShipTo&gt; pool) {
+    *    ShipTo.fluentPool = pool;
+    * }
+    * 
+    * public static ShipTo fluentAcquire() {
+    *    FluentPool&lt;ShipTo&gt; pool = ShipTo.fluentPool;
+    *    if (pool != null) {
+    *       ShipTo value = pool.acquire();
+    *       if (value != null) {
+    *          return value;
+    *       }
+    *    }
+    *    return new ShipTo();
+    * }
+    * 
+    * public void fluentRecycle() {
+    *    this.fluentRelease();
+    *    FluentPool&lt;ShipTo&gt; pool = ShipTo.fluentPool;
+    *    if (pool != null) {
+    *       pool.release(this);
+    *    }
+    * }
+    * 
+    * protected void fluentRelease() {
+    *    // recycles the managed children and clears the fields
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * <code>acquire()</code> returns null when the pool is empty. The pool
+    * decides how many instances it keeps, and whether it is shared by the
+    * threads or not. Only <code>fluentRelease()</code> is generated for the
+    * abstract classes. A package already defining a <code>FluentPool</code>
+    * class is reported as an error.
+    * @param classOutline - the class outline.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   protected void createPoolMethods(ClassOutline classOutline) throws SAXException {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+
+      createClearMethod(classOutline, true);
+      if (!isManagedClass(implClass)) {
+         return;
+      }
+      final JDefinedClass poolInterface = getPoolInterface(classOutline);
+      if (poolInterface == null) {
+         return;
+      }
+
+      final JClass poolClass = poolInterface.narrow(implClass);
+      JFieldVar poolField = implClass.field(JMod.PRIVATE | JMod.STATIC | JMod.VOLATILE, poolClass, "fluentPool");
+
+      JMethod setPool = implClass.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "fluentSetPool");
+      setPool.body().assign(implClass.staticRef(poolField), setPool.param(poolClass, "pool"));
+
+      JMethod acquire = implClass.method(JMod.PUBLIC | JMod.STATIC, implClass, "fluentAcquire");
+      JBlock acquireBody = acquire.body();
+      JVar acquirePool = acquireBody.decl(poolClass, "pool", implClass.staticRef(poolField));
+      JBlock _ifPoolThen = acquireBody._if(acquirePool.ne(JExpr._null()))._then();
+      JVar acquired = _ifPoolThen.decl(implClass, "value", acquirePool.invoke("acquire"));
+      _ifPoolThen._if(acquired.ne(JExpr._null()))._then()._return(acquired);
+      acquireBody._return(JExpr._new(implClass));
+
+      JMethod recycle = createMutatorMethod(implClass, codeModel.VOID, "fluentRecycle");
+      JBlock recycleBody = recycle.body();
+      // The children are released even without pool: their classes may have one.
+      recycleBody.invoke(JExpr._this(), "fluentRelease");
+      JVar recyclePool = recycleBody.decl(poolClass, "pool", implClass.staticRef(poolField));
+      recycleBody._if(recyclePool.ne(JExpr._null()))._then().invoke(recyclePool, "release").arg(JExpr._this());
+   }
+
+   /**
+    * Returns the <code>FluentPool</code> interface of the package of a class,
+    * created on first use, see {@link #createPoolMethods(ClassOutline)}.
+    * @param classOutline - the class outline.
+    * @return the pool interface, or null if the package already defines a
+    *         <code>FluentPool</code> class.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private JDefinedClass getPoolInterface(ClassOutline classOutline) throws SAXException {
+      final JPackage _package = classOutline.implClass._package();
+      if (poolInterfaces.containsKey(_package)) {
+         return poolInterfaces.get(_package);
+      }
+      JDefinedClass poolInterface = null;
+      try {
+         poolInterface = _package._interface(JMod.PUBLIC, "FluentPool");
+         JClass valueClass = poolInterface.generify("T");
+         poolInterface.method(JMod.NONE, valueClass, "acquire");
+         poolInterface.method(JMod.NONE, _package.owner().VOID, "release").param(valueClass, "value");
+      } catch (JClassAlreadyExistsException e) {
+         errorHandler.error(new SAXParseException(_package.name()
+            + " already defines FluentPool: the pool methods are not generated", classOutline.target.getLocator()));
+      }
+      poolInterfaces.put(_package, poolInterface);
+      return poolInterface;
+   }
+
+   /**
+    * <p>
+    * Generates the <code>fluentReset()</code> method, or the
+    * <code>fluentRelease()</code> method of the pool (see
+    * {@link #createPoolMethods(ClassOutline)}). Both reset the fields of the
+    * class to their default values and clear the lists, keeping their
+    * capacity. <code>fluentReset()</code>, generated with the
+    * {@value #RESET_OPTION} option, resets the managed children in
+    * place, so an instance graph can be reused without allocating it again;
+    * those children are then marshalled as empty elements until they are
+    * filled again. <code>fluentRelease()</code> gives them back to their pools.
+    * The elements of the managed lists are given back to their pools with the
+    * {@value #POOL_OPTION} option. The children and lists shared with a fork
+    * are dropped instead, and the published flags of the
+    * {@value #THREAD_SAFE_OPTION} option are cleared. The values held outside
+    * of the JAXB lists are discarded without being moved into the lists: the
+    * sparse maps and the pending queues are dropped, the sparse values being
+    * given back to their pools, and the off-heap stores and the primitive
+    * buffers are emptied, keeping their capacity. The generated body method
+    * looks like:
+    * 
+    * <pre>
+    * //...
+    * public void fluentReset() {
+    *    super.fluentReset();
+    *    this.orderPerson = null;
+    *    if (this.shipTo != null) {
+    *       this.shipTo.fluentReset();
+    *    }
+    *    this.itemSparse = null;
+    *    if (this.item != null) {
+    *       for (Item value : this.item) {
+    *          if (value != null) {
+    *             value.fluentRecycle();
+    *          }
+    *       }
+    *       this.item.clear();
+    *    }
+    *    //...
+    * }
+    * 
+    * protected void fluentRelease() {
+    *    super.fluentRelease();
+    *    this.orderPerson = null;
+    *    if (this.shipTo != null) {
+    *       this.shipTo.fluentRecycle();
+    *       this.shipTo = null;
+    *    }
+    *    //...
+    * }
+    * //...
+    * </pre>
+    * @param classOutline - the class outline.
+    * @param release - true to generate <code>fluentRelease()</code>, false to
+    * generate <code>fluentReset()</code>.
+    */
+   private void createClearMethod(ClassOutline classOutline, boolean release) {
+      final JDefinedClass implClass = classOutline.implClass;
+      final String methodName = release ? "fluentRelease" : "fluentReset";
+
+      JMethod method = release ? implClass.method(JMod.PROTECTED, implClass.owner().VOID, methodName)
+         : createMutatorMethod(implClass, implClass.owner().VOID, methodName);
+      JBlock body = method.body();
+
+      if (classOutline.getSuperClass() != null) {
+         body.invoke(JExpr._super(), methodName);
+      }
+      for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+         final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+         final JType rawType = fieldOutline.getRawType();
+         final JFieldVar sharedFlag = sharedFlags.get(fieldOutline);
+         switch (fieldTypes.get(fieldOutline)) {
+            case MANAGED_FIELD:
+               JBlock _ifFieldThen = body._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then();
+               JBlock _ifOwnedThen = _ifFieldThen;
+               if (sharedFlag != null) {
+                  // A child shared with a fork is only dropped.
+                  JConditional _ifShared = _ifFieldThen._if(JExpr._this().ref(sharedFlag));
+                  _ifShared._then().assign(JExpr.refthis(fieldName), JExpr._null());
+                  _ifOwnedThen = _ifShared._else();
+               }
+               if (!outlineClasses.contains(rawType)) {
+                  _ifFieldThen.assign(JExpr.refthis(fieldName), JExpr._null());
+               } else if (release) {
+                  _ifOwnedThen.invoke(JExpr.refthis(fieldName), "fluentRecycle");
+                  _ifFieldThen.assign(JExpr.refthis(fieldName), JExpr._null());
+               } else {
+                  _ifOwnedThen.invoke(JExpr.refthis(fieldName), "fluentReset");
+               }
+               break;
+            case MANAGED_LIST:
+               final JClass elementClass = getElementClass(fieldOutline);
+               final JFieldVar elements = sharedElements.get(fieldOutline);
+               createDiscardPendingValues(body, fieldOutline);
+               JBlock _ifListThen = body._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then();
+               if (sharedFlag != null) {
+                  // A list shared with a fork is only dropped.
+                  JConditional _ifShared = _ifListThen._if(JExpr._this().ref(sharedFlag));
+                  _ifShared._then().assign(JExpr.refthis(fieldName), JExpr._null());
+                  _ifListThen = _ifShared._else();
+               }
+               if (pool && outlineClasses.contains(elementClass)) {
+                  JForEach _forEach = _ifListThen.forEach(elementClass, "value", JExpr.refthis(fieldName));
+                  JExpression owned = _forEach.var().ne(JExpr._null());
+                  if (elements != null) {
+                     owned = owned.cand(JExpr._this().ref(elements).eq(JExpr._null()).cor(
+                        JExpr._this().ref(elements).invoke("contains").arg(_forEach.var()).not()));
+                  }
+                  _forEach.body()._if(owned)._then().invoke(_forEach.var(), "fluentRecycle");
+               }
+               _ifListThen.invoke(JExpr.refthis(fieldName), "clear");
+               if (elements != null) {
+                  body.assign(JExpr._this().ref(elements), JExpr._null());
+               }
+               break;
+            case PRIMITIVE_LIST:
+            case OTHER:
+            default:
+               if (fieldOutline.getPropertyInfo().isCollection()) {
+                  createDiscardPendingValues(body, fieldOutline);
+                  JBlock _ifOtherListThen = body._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then();
+                  if (sharedFlag != null) {
+                     JConditional _ifShared = _ifOtherListThen._if(JExpr._this().ref(sharedFlag));
+                     _ifShared._then().assign(JExpr.refthis(fieldName), JExpr._null());
+                     _ifOtherListThen = _ifShared._else();
+                  }
+                  _ifOtherListThen.invoke(JExpr.refthis(fieldName), "clear");
+               } else {
+                  body.assign(JExpr.refthis(fieldName), createDefaultValue(rawType));
+               }
+               break;
+         }
+         if (sharedFlag != null) {
+            body.assign(JExpr._this().ref(sharedFlag), JExpr.FALSE);
+         }
+         final JFieldVar published = implClass.fields().get(fieldName + "Published");
+         if (published != null) {
+            body.assign(JExpr._this().ref(published), JExpr.FALSE);
+         }
+      }
+   }
+
+   /**
+    * Generates the statements discarding the values of a list held outside
+    * of the JAXB list, see {@link #createClearMethod(ClassOutline, boolean)}.
+    * The sparse values are given back to their pools with the
+    * {@value #POOL_OPTION} option, the pending values are left to the
+    * garbage collector.
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the list.
+    */
+   private void createDiscardPendingValues(JBlock block, FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+
+      JFieldVar sparseField = implClass.fields().get(fieldName + "Sparse");
+      if (sparseField != null) {
+         final JClass elementClass = getElementClass(fieldOutline);
+         if (pool && outlineClasses.contains(elementClass)) {
+            JBlock _ifSparseThen = block._if(JExpr._this().ref(sparseField).ne(JExpr._null()))._then();
+            JForEach _forEach = _ifSparseThen.forEach(elementClass, "value", JExpr._this().ref(sparseField).invoke(
+               "values"));
+            _forEach.body().invoke(_forEach.var(), "fluentRecycle");
+         }
+         block.assign(JExpr._this().ref(sparseField), JExpr._null());
+      }
+      JFieldVar pendingField = implClass.fields().get(fieldName + "Pending");
+      if (pendingField != null) {
+         block.assign(JExpr._this().ref(pendingField), JExpr._null());
+      }
+      JFieldVar storeSizeField = implClass.fields().get(fieldName + "StoreSize");
+      if (storeSizeField != null) {
+         block.assign(JExpr._this().ref(storeSizeField), JExpr.lit(0));
+      }
+      JFieldVar bufferSizeField = implClass.fields().get(fieldName + "BufferSize");
+      if (bufferSizeField != null) {
+         block.assign(JExpr._this().ref(bufferSizeField), JExpr.lit(0));
+      }
+   }
+
+   /**
+    * <p>
+    * Generates the deep copy methods of the class. The managed children are
+    * copied recursively, the lists are copied into new pre-sized lists, the
+    * arrays and calendars are cloned and the other values, immutable in the
+    * usual bindings, are shared. The values which may hold instances of the
+    * generated classes without being managed, such as the elements of a
+    * choice list or the {@link javax.xml.bind.JAXBElement} values, are copied
+    * one by one, see {@link #createCopyValueMethod(JDefinedClass, Set)}. The
+    * generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public ShipOrder fluentCopy() {
+    *    ShipOrder copy = new ShipOrder();
+    *    this.fluentCopyTo(copy);
+    *    return copy;
+    * }
+    * 
+    * protected void fluentCopyTo(ShipOrder copy) {
+    *    super.fluentCopyTo(copy);
+    *    this.fluentFlush();
+    *    copy.orderPerson = this.orderPerson;
+    *    copy.shipTo = ((this.shipTo == null) ? null : this.shipTo.fluentCopy());
+    *    if (this.item != null) {
+    *       List&lt;Item&gt; list = copy.getItem();
+    *       if (list instanceof ArrayList) {
+    *          ((ArrayList&lt;Item&gt;) list).ensureCapacity(this.item.size());
+    *       } else if (list instanceof Vector) {
+    *          ((Vector&lt;Item&gt;) list).ensureCapacity(this.item.size());
+    *       }
+    *       for (Item value : this.item) {
+    *          list.add((value == null) ? null : value.fluentCopy());
+    *       }
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * A list declared with its implementation type rather than {@link List} is
+    * pre-sized through its own <code>ensureCapacity(int)</code> method, if any.
+    * An abstract class only declares <code>fluentCopy()</code>, each concrete
+    * subclass overrides it with its own type.
+    * @param classOutline - the class outline.
+    */
+   private void createCopyMethods(ClassOutline classOutline) {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+      final Set<JClass> copiedClasses = new HashSet<JClass>();
+      boolean copiedValues = false;
+
+      JMethod copyTo = implClass.method(JMod.PROTECTED, codeModel.VOID, "fluentCopyTo");
+      JVar copy = copyTo.param(implClass, "copy");
+      JBlock body = copyTo.body();
+      if (classOutline.getSuperClass() != null) {
+         body.invoke(JExpr._super(), "fluentCopyTo").arg(copy);
+      }
+      if (flushMethods.containsKey(implClass)) {
+         body.invoke(JExpr._this(), FLUSH_METHOD);
+      }
+      for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+         final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+         final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+         final JType rawType = fieldOutline.getRawType();
+         final JExpression field = JExpr.refthis(fieldName);
+         final JFieldRef copyField = copy.ref(fieldName);
+         final FieldType fieldType = fieldTypes.get(fieldOutline);
+         final boolean copiedValue = FieldType.OTHER.equals(fieldType) && addCopiedClasses(fieldOutline, copiedClasses);
+         copiedValues |= copiedValue;
+         if (FieldType.MANAGED_FIELD.equals(fieldType) && outlineClasses.contains(rawType)) {
+            body.assign(copyField, JOp.cond(field.eq(JExpr._null()), JExpr._null(), field.invoke("fluentCopy")));
+         } else if (FieldType.MANAGED_LIST.equals(fieldType) || FieldType.PRIMITIVE_LIST.equals(fieldType)
+            || isList(getBoxedType(fieldOutline))) {
+            JBlock _ifListThen = body._if(field.ne(JExpr._null()))._then();
+            JVar list = _ifListThen.decl(rawType, "list", copy.invoke("get" + propertyName));
+            if (copiedValue) {
+               final JClass elementClass = getListClass(getBoxedType(fieldOutline)).getTypeParameters().get(0);
+               createEnsureCapacity(_ifListThen, fieldOutline, list, field.invoke("size"), elementClass);
+               JForEach _forEach = _ifListThen.forEach(elementClass, "value", field);
+               _forEach.body().invoke(list, "add").arg(
+                  JExpr.cast(elementClass, JExpr.invoke("fluentCopyValue").arg(_forEach.var())));
+            } else if (FieldType.OTHER.equals(fieldType)) {
+               _ifListThen.invoke(list, "addAll").arg(field);
+            } else {
+               final JClass elementClass = getElementClass(fieldOutline);
+               createEnsureCapacity(_ifListThen, fieldOutline, list, field.invoke("size"), elementClass);
+               if (FieldType.MANAGED_LIST.equals(fieldType) && outlineClasses.contains(elementClass)) {
+                  JForEach _forEach = _ifListThen.forEach(elementClass, "value", field);
+                  _forEach.body().invoke(list, "add").arg(
+                     JOp.cond(_forEach.var().eq(JExpr._null()), JExpr._null(), _forEach.var().invoke("fluentCopy")));
+               } else {
+                  _ifListThen.invoke(list, "addAll").arg(field);
+               }
+            }
+         } else if (copiedValue) {
+            body.assign(copyField, JExpr.cast(rawType, JExpr.invoke("fluentCopyValue").arg(field)));
+         } else if (rawType.isArray() || rawType.fullName().equals(XMLGregorianCalendar.class.getName())) {
+            body.assign(copyField, JOp.cond(field.eq(JExpr._null()), JExpr._null(), JExpr.cast(rawType, field
+               .invoke("clone"))));
+         } else {
+            body.assign(copyField, field);
+         }
+      }
+      if (copiedValues) {
+         createCopyValueMethod(implClass, copiedClasses);
+      }
+
+      if (implClass.isAbstract()) {
+         implClass.method(JMod.PUBLIC | JMod.ABSTRACT, implClass, "fluentCopy");
+      } else {
+         JMethod method = implClass.method(JMod.PUBLIC, implClass, "fluentCopy");
+         JVar result = method.body().decl(implClass, "copy", createNewInstance(implClass));
+         method.body().invoke(JExpr._this(), copyTo).arg(result);
+         method.body()._return(result);
+      }
+   }
+
+   /**
+    * Adds the root classes of the generated classes which the values of a
+    * field may hold without being managed, such as the elements of a choice
+    * list or the values of {@link javax.xml.bind.JAXBElement}s. The root
+    * class is enough, as <code>fluentCopy()</code> is overridden by its
+    * subclasses.
+    * @param fieldOutline - the field outline.
+    * @param copiedClasses - the set to add the classes to.
+    * @return true if the values of the field must be copied one by one: they
+    * may be instances of generated classes or {@link javax.xml.bind.JAXBElement}s.
+    */
+   private boolean addCopiedClasses(FieldOutline fieldOutline, Set<JClass> copiedClasses) {
+      final Outline outline = fieldOutline.parent().parent();
+      boolean copied = false;
+      for (CTypeInfo typeInfo : fieldOutline.getPropertyInfo().ref()) {
+         if (typeInfo instanceof CElementInfo) {
+            copied = true;
+            typeInfo = ((CElementInfo) typeInfo).getContentType();
+         }
+         if (typeInfo instanceof CClassInfo) {
+            ClassOutline classOutline = outline.getClazz((CClassInfo) typeInfo);
+            while (classOutline.getSuperClass() != null) {
+               classOutline = classOutline.getSuperClass();
+            }
+            copiedClasses.add(classOutline.implClass);
+            copied = true;
+         }
+      }
+      JClass valueClass = getBoxedType(fieldOutline);
+      if (fieldOutline.getPropertyInfo().isCollection()) {
+         valueClass = getListClass(valueClass).getTypeParameters().get(0);
+      }
+      return copied || valueClass.erasure().fullName().equals(JAXBElement.class.getName());
+   }
+
+   /**
+    * <p>
+    * Generates the method copying the values of the fields which may hold
+    * instances of the generated classes without being managed (see
+    * {@link #addCopiedClasses(FieldOutline, Set)}): the instances of the
+    * generated classes are copied with <code>fluentCopy()</code> and the
+    * {@link javax.xml.bind.JAXBElement}s are rebuilt around a copy of their
+    * value. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * private static Object fluentCopyValue(Object value) {
+    *    if (value instanceof JAXBElement) {
+    *       JAXBElement element = ((JAXBElement) value);
+    *       JAXBElement copy = new JAXBElement(element.getName(), element.getDeclaredType(), element.getScope(),
+    *          fluentCopyValue(element.getValue()));
+    *       copy.setNil(element.isNil());
+    *       return copy;
+    *    }
+    *    if (value instanceof Page) {
+    *       return ((Page) value).fluentCopy();
+    *    }
+    *    return value;
+    * }
+    * //...
+    * </pre>
+    * @param implClass - the class.
+    * @param copiedClasses - the generated classes to copy.
+    */
+   private void createCopyValueMethod(JDefinedClass implClass, Set<JClass> copiedClasses) {
+      final JCodeModel codeModel = implClass.owner();
+      final JClass elementClass = codeModel.ref(JAXBElement.class);
+
+      JMethod method = implClass.method(JMod.PRIVATE | JMod.STATIC, Object.class, "fluentCopyValue");
+      JVar value = method.param(Object.class, "value");
+      JBlock body = method.body();
+
+      JBlock _ifElementThen = body._if(value._instanceof(elementClass))._then();
+      JVar element = _ifElementThen.decl(elementClass, "element", JExpr.cast(elementClass, value));
+      JVar copy = _ifElementThen.decl(elementClass, "copy", JExpr._new(elementClass).arg(element.invoke("getName"))
+         .arg(element.invoke("getDeclaredType")).arg(element.invoke("getScope")).arg(
+            JExpr.invoke(method).arg(element.invoke("getValue"))));
+      _ifElementThen.invoke(copy, "setNil").arg(element.invoke("isNil"));
+      _ifElementThen._return(copy);
+      for (JClass copiedClass : copiedClasses) {
+         body._if(value._instanceof(copiedClass))._then()._return(
+            JExpr.invoke(JExpr.cast(copiedClass, value), "fluentCopy"));
+      }
+      body._return(value);
+   }
+
+   /**
+    * <p>
+    * Generates the chained setters of the simple fields of the class:
+    * <code>with&lt;property&gt;(value)</code> calls the JAXB setter and returns
+    * the instance, so that a whole subtree can be filled in one expression.
+    * The setters of the fields of the generated super classes are overridden
+    * as well, so that a chain keeps the type of the class. The fields without
+    * JAXB setter, such as the lists, and the setters already defined, e.g. by
+    * another plugin, are skipped. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public ShipTo withCity(String value) {
+    *    this.setCity(value);
+    *    return this;
+    * }
+    * //...
+    * </pre>
+    * @param classOutline - the class outline.
+    */
+   protected void createChainedSetters(ClassOutline classOutline) {
+      final JDefinedClass implClass = classOutline.implClass;
+      for (ClassOutline current = classOutline; current != null; current = current.getSuperClass()) {
+         for (FieldOutline fieldOutline : current.getDeclaredFields()) {
+            final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+            final JType rawType = fieldOutline.getRawType();
+            final JType[] signature = new JType[] { rawType };
+            if (!FieldType.OTHER.equals(fieldTypes.get(fieldOutline))
+               || current.implClass.getMethod("set" + propertyName, signature) == null
+               || implClass.getMethod("with" + propertyName, signature) != null) {
+               continue;
+            }
+            JMethod method = createMutatorMethod(implClass, implClass, "with" + propertyName);
+            JVar value = method.param(rawType, "value");
+            method.body().invoke(JExpr._this(), "set" + propertyName).arg(value);
+            method.body()._return(JExpr._this());
+         }
+      }
+   }
+
+   /**
+    * <p>
+    * Generates the builder of a managed class. The builder appends the
+    * elements of the managed lists of the class, and of its generated super
+    * classes, to arrays, and <code>build()</code> creates each list at its
+    * final size in one pass, and assigns it to the JAXB field: the lists are
+    * not grown on the way, and are left without spare capacity. The fields,
+    * including the managed children, are set on the built instance with
+    * <code>with&lt;property&gt;(value)</code>, which returns the builder, so
+    * that the calls chain. A class already defining a <code>Builder</code>
+    * class is reported as a warning, and gets no builder. The generated code
+    * looks like:
+    * 
+    * <pre>
+    * //...
+    * public static class Builder {
+    *    private ShipOrder instance = new ShipOrder();
+    *    private ShipOrder.Item[] itemBuffer;
+    *    private int itemSize;
+    * 
+    *    public ShipOrder.Builder withOrderPerson(String value) {
+    *       this.instance.setOrderPerson(value);
+    *       return this;
+    *    }
+    * 
+    *    public ShipOrder.Builder withShipTo(ShipOrder.ShipTo value) {
+    *       this.instance.setShipTo(value);
+    *       return this;
+    *    }
+    * 
+    *    public ShipOrder.Item withNewItem() {
+    *       ShipOrder.Item value = new ShipOrder.Item();
+    *       this.addItem(value);
+    *       return value;
+    *    }
+    * 
+    *    public ShipOrder.Builder addItem(ShipOrder.Item value) {
+    *       ShipOrder.Item[] buffer = this.itemBuffer;
+    *       if (buffer == null) {
+    *          buffer = new ShipOrder.Item[16];
+    *          this.itemBuffer = buffer;
+    *       } else if (this.itemSize == buffer.length) {
+    *          buffer = Arrays.copyOf(buffer, (buffer.length * 2));
+    *          this.itemBuffer = buffer;
+    *       }
+    *       buffer[this.itemSize++] = value;
+    *       return this;
+    *    }
+    * 
+    *    public ShipOrder build() {
+    *       ShipOrder instance = this.instance;
+    *       if (instance == null) {
+    *          throw new IllegalStateException("ShipOrder.Builder already built");
+    *       }
+    *       this.instance = null;
+    *       if (this.itemSize &gt; 0) {
+    *          List&lt;ShipOrder.Item&gt; list = new ArrayList&lt;ShipOrder.Item&gt;(this.itemSize);
+    *          for (int i = 0; (i &lt; this.itemSize); i++) {
+    *             list.add(this.itemBuffer[i]);
+    *          }
+    *          instance.item = list;
+    *          this.itemBuffer = null;
+    *       }
+    *       return instance;
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The lists are created with the collection type of the XJC bindings. A
+    * list whose implementation is not known is filled through its getter.
+    * @param classOutline - the class outline.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   protected void createBuilder(ClassOutline classOutline) throws SAXException {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+
+      JDefinedClass builderClass;
+      try {
+         builderClass = implClass._class(JMod.PUBLIC | JMod.STATIC, "Builder");
+      } catch (JClassAlreadyExistsException e) {
+         errorHandler.warning(new SAXParseException(implClass.fullName()
+            + " already defines Builder: its builder is not generated", classOutline.target.getLocator()));
+         return;
+      }
+      JFieldVar instanceField = builderClass.field(JMod.PRIVATE, implClass, "instance", createNewInstance(implClass));
+      JFieldRef instance = JExpr._this().ref(instanceField);
+
+      JMethod build = builderClass.method(JMod.PUBLIC, implClass, "build");
+      JVar built = build.body().decl(implClass, "instance", instance);
+      build.body()._if(built.eq(JExpr._null()))._then()._throw(
+         JExpr._new(codeModel.ref(IllegalStateException.class)).arg(implClass.name() + ".Builder already built"));
+      build.body().assign(instance, JExpr._null());
+
+      // The fields of the class hide the fields of its super classes.
+      Set<String> names = new HashSet<String>();
+      for (ClassOutline current = classOutline; current != null; current = current.getSuperClass()) {
+         for (FieldOutline fieldOutline : current.getDeclaredFields()) {
+            final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+            final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+            final JType rawType = fieldOutline.getRawType();
+            if (!names.add(fieldName)) {
+               continue;
+            }
+            switch (fieldTypes.get(fieldOutline)) {
+               case MANAGED_LIST:
+                  createBuilderList(builderClass, build, built, fieldOutline);
+                  break;
+               case MANAGED_FIELD:
+               case PRIMITIVE_LIST:
+               case OTHER:
+               default:
+                  if (current.implClass.getMethod("set" + propertyName, new JType[] { rawType }) != null) {
+                     JMethod set = builderClass.method(JMod.PUBLIC, builderClass, "with" + propertyName);
+                     set.body().invoke(instance, "set" + propertyName).arg(set.param(rawType, "value"));
+                     set.body()._return(JExpr._this());
+                  }
+                  break;
+            }
+         }
+      }
+      build.body()._return(built);
+   }
+
+   /**
+    * Generates the accessors of the builder appending the elements of a
+    * managed list, and the statements of <code>build()</code> assigning the
+    * list, see {@link #createBuilder(ClassOutline)}.
+    * @param builderClass - the builder class.
+    * @param build - the <code>build()</code> method.
+    * @param built - the built instance in <code>build()</code>.
+    * @param fieldOutline - the field outline of the managed list.
+    */
+   private void createBuilderList(JDefinedClass builderClass, JMethod build, JVar built, FieldOutline fieldOutline) {
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = builderClass.owner();
+
+      JFieldVar bufferField = builderClass.field(JMod.PRIVATE, elementClass.array(), fieldName + "Buffer");
+      JFieldVar sizeField = builderClass.field(JMod.PRIVATE, codeModel.INT, fieldName + "Size");
+      JFieldRef buffered = JExpr._this().ref(sizeField);
+
+      // Appends an element.
+      JMethod add = builderClass.method(JMod.PUBLIC, builderClass, "add" + propertyName);
+      JVar value = add.param(elementClass, "value");
+      JVar buffer = add.body().decl(elementClass.array(), "buffer", JExpr._this().ref(bufferField));
+      JConditional _ifNoBuffer = add.body()._if(buffer.eq(JExpr._null()));
+      _ifNoBuffer._then().assign(buffer, JExpr.newArray(elementClass, 16));
+      _ifNoBuffer._then().assign(JExpr._this().ref(bufferField), buffer);
+      JBlock _ifFull = _ifNoBuffer._elseif(buffered.eq(buffer.ref("length")))._then();
+      _ifFull.assign(buffer, codeModel.ref(Arrays.class).staticInvoke("copyOf").arg(buffer).arg(
+         buffer.ref("length").mul(JExpr.lit(2))));
+      _ifFull.assign(JExpr._this().ref(bufferField), buffer);
+      add.body().assign(buffer.component(JExpr._this().ref(sizeField).incr()), value);
+      add.body()._return(JExpr._this());
+
+      if (isManagedClass(elementClass)) {
+         JMethod withNew = builderClass.method(JMod.PUBLIC, elementClass, "withNew" + propertyName);
+         JVar element = withNew.body().decl(elementClass, "value", createNewInstance(elementClass));
+         withNew.body().invoke(JExpr._this(), add).arg(element);
+         withNew.body()._return(element);
+      }
+
+      // Creates the list at its final size.
+      JBlock _ifBuffered = build.body()._if(buffered.gt(JExpr.lit(0)))._then();
+      JClass listClass = getListImplementation(fieldOutline);
+      JVar list;
+      if (listClass == null) {
+         list = _ifBuffered.decl(fieldOutline.getRawType(), "list", built.invoke("get" + propertyName));
+         createEnsureCapacity(_ifBuffered, fieldOutline, list, list.invoke("size").plus(buffered), elementClass);
+      } else {
+         JInvocation newList = JExpr._new(listClass);
+         Class<?> loadedClass = loadClass(listClass);
+         if (loadedClass != null && hasSizeConstructor(loadedClass)) {
+            newList.arg(buffered);
+         }
+         list = _ifBuffered.decl(fieldOutline.getRawType(), "list", newList);
+      }
+      JForLoop _for = _ifBuffered._for();
+      JVar i = _for.init(codeModel.INT, "i", JExpr.lit(0));
+      _for.test(i.lt(buffered));
+      _for.update(i.incr());
+      _for.body().invoke(list, "add").arg(JExpr._this().ref(bufferField).component(i));
+      if (listClass != null) {
+         _ifBuffered.assign(built.ref(fieldName), list);
+      }
+      _ifBuffered.assign(JExpr._this().ref(bufferField), JExpr._null());
+   }
+
+   /**
+    * Returns the class of the lists created by the getter of a list field,
+    * that is the collection type of the XJC bindings. XJC does not expose the
+    * collection type in its public model: it is read from the
+    * <code>new</code> expression of the getter generated by XJC, before the
+    * getter is modified by this plugin, see
+    * {@link #run(Outline, Options, ErrorHandler)}. Without such expression,
+    * the declared type is used if it is a concrete class.
+    * @param fieldOutline - the field outline of the list.
+    * @return the list class, with its element type, or null if unknown.
+    */
+   private JClass getListImplementation(FieldOutline fieldOutline) {
+      if (listImplementations.containsKey(fieldOutline)) {
+         return listImplementations.get(fieldOutline);
+      }
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JType rawType = fieldOutline.getRawType();
+      JClass listClass = null;
+      JMethod getter = implClass.getMethod("get" + propertyName, new JType[0]);
+      if (getter != null) {
+         StringWriter writer = new StringWriter();
+         new JFormatter(writer).g(getter.body());
+         Matcher matcher = NEW_LIST_PATTERN.matcher(writer.toString());
+         if (matcher.find()) {
+            listClass = implClass.owner().ref(matcher.group(1));
+            if (matcher.group(2).length() > 0) {
+               listClass = listClass.narrow(getElementClass(fieldOutline));
+            }
+         }
+      }
+      if (listClass == null && rawType instanceof JClass && !((JClass) rawType).isInterface()
+         && !((JClass) rawType).isAbstract()) {
+         listClass = (JClass) rawType;
+      }
+      listImplementations.put(fieldOutline, listClass);
+      return listClass;
+   }
+
+   /**
+    * Tells whether a list class has a public constructor taking the initial
+    * capacity.
+    * @param listClass - the list class.
+    * @return true if the class has a public <code>(int)</code> constructor.
+    */
+   private boolean hasSizeConstructor(Class<?> listClass) {
+      try {
+         return Modifier.isPublic(listClass.getConstructor(int.class).getModifiers());
+      } catch (NoSuchMethodException e) {
+         return false;
+      } catch (SecurityException e) {
+         return false;
+      }
+   }
+
+   /**
+    * <p>
+    * Generates the compaction methods of the class.
+    * <code>fluentIsEmpty()</code> tells whether the fields of the instance
+    * are unset, the managed children being empty and the lists empty. A
+    * primitive field cannot be unset, 0 or false being valid values, so an
+    * instance with a primitive field is never empty.
+    * <code>fluentCompact(boolean prune)</code> compacts the
+    * managed children and the elements of the managed lists recursively, and
+    * trims the capacity of the {@link ArrayList} and {@link Vector} lists.
+    * With <code>prune</code>, it also drops the empty children, replaces the
+    * empty elements of the managed lists by <code>null</code>, which JAXB
+    * does not marshal, removes the trailing <code>null</code> padding of the
+    * managed lists, so the indexes of the remaining elements do not change,
+    * and drops the empty lists, which the getters create again. The children,
+    * lists and elements shared with a fork are left unchanged, so compacting
+    * never copies them. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public boolean fluentIsEmpty() {
+    *    this.fluentFlush();
+    *    return (this.orderPerson == null) &amp;&amp; ((this.shipTo == null) || this.shipTo.fluentIsEmpty())
+    *       &amp;&amp; ((this.item == null) || this.item.isEmpty()) &amp;&amp; (this.orderId == null);
+    * }
+    * 
+    * public long fluentCompact(boolean prune) {
+    *    long reclaimed = 0L;
+    *    this.fluentFlush();
+    *    if (this.shipTo != null) {
+    *       reclaimed += this.shipTo.fluentCompact(prune);
+    *       if (prune &amp;&amp; this.shipTo.fluentIsEmpty()) {
+    *          this.shipTo = null;
+    *          reclaimed += 32;
+    *       }
+    *    }
+    *    if ((this.item != null) &amp;&amp; (!this.itemShared)) {
+    *       List&lt;Item&gt; list = this.getItem();
+    *       for (ListIterator&lt;Item&gt; it = list.listIterator(); it.hasNext();) {
+    *          Item value = it.next();
+    *          if (value != null) {
+    *             reclaimed += value.fluentCompact(prune);
+    *             if (prune &amp;&amp; value.fluentIsEmpty()) {
+    *                it.set(null);
+    *                reclaimed += 32;
+    *             }
+    *          }
+    *       }
+    *       if (prune) {
+    *          for (int i = (list.size() - 1); ((i &gt;= 0) &amp;&amp; (list.get(i) == null)); i--) {
+    *             list.remove(i);
+    *          }
+    *       }
+    *       int size = list.size();
+    *       if (list instanceof ArrayList) {
+    *          ((ArrayList&lt;Item&gt;) list).trimToSize();
+    *       } else if (list instanceof Vector) {
+    *          reclaimed += (4L * (((Vector&lt;Item&gt;) list).capacity() - size));
+    *          ((Vector&lt;Item&gt;) list).trimToSize();
+    *       }
+    *       if (prune &amp;&amp; (size == 0)) {
+    *          this.item = null;
+    *          reclaimed += 24;
+    *       }
+    *    }
+    *    return reclaimed;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The methods are generated with the {@value #COMPACT_OPTION} option.
+    * The returned number of reclaimed bytes is an estimate, assuming
+    * compressed references. The capacity of an {@link ArrayList} cannot be
+    * read, so its trimmed slots are not counted: only the slots of the
+    * {@link Vector} lists, whose capacity is known, are.
+    * @param classOutline - the class outline.
+    */
+   private void createCompactMethods(ClassOutline classOutline) {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod isEmpty = implClass.method(JMod.PUBLIC, codeModel.BOOLEAN, "fluentIsEmpty");
+      JMethod compact = implClass.method(JMod.PUBLIC, codeModel.LONG, "fluentCompact");
+      JVar prune = compact.param(codeModel.BOOLEAN, "prune");
+      JBlock body = compact.body();
+      JVar reclaimed = body.decl(codeModel.LONG, "reclaimed", JExpr.lit(0L));
+      JExpression empty = JExpr.TRUE;
+      boolean primitive = false;
+      if (classOutline.getSuperClass() != null) {
+         body.assign(reclaimed, JExpr._super().invoke(compact).arg(prune));
+         isEmpty.body()._if(JExpr._super().invoke(isEmpty).not())._then()._return(JExpr.FALSE);
+      }
+      if (flushMethods.containsKey(implClass)) {
+         body.invoke(JExpr._this(), FLUSH_METHOD);
+         isEmpty.body().invoke(JExpr._this(), FLUSH_METHOD);
+      }
+      for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+         final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+         final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+         final JType rawType = fieldOutline.getRawType();
+         final JFieldRef field = JExpr._this().ref(fieldName);
+         final FieldType fieldType = fieldTypes.get(fieldOutline);
+         final JFieldVar sharedFlag = sharedFlags.get(fieldOutline);
+         if (FieldType.MANAGED_FIELD.equals(fieldType) && outlineClasses.contains(rawType)) {
+            empty = empty.cand(field.eq(JExpr._null()).cor(field.invoke("fluentIsEmpty")));
+            JExpression owned = field.ne(JExpr._null());
+            if (sharedFlag != null) {
+               owned = owned.cand(JExpr._this().ref(sharedFlag).not());
+            }
+            JBlock _ifOwned = body._if(owned)._then();
+            _ifOwned.assignPlus(reclaimed, field.invoke("fluentCompact").arg(prune));
+            JBlock _ifPruned = _ifOwned._if(prune.cand(field.invoke("fluentIsEmpty")))._then();
+            _ifPruned.assign(field, JExpr._null());
+            _ifPruned.assignPlus(reclaimed, JExpr.lit(getShallowSize((JClass) rawType)));
+         } else if (FieldType.MANAGED_LIST.equals(fieldType) || FieldType.PRIMITIVE_LIST.equals(fieldType)
+            || isList(getBoxedType(fieldOutline))) {
+            empty = empty.cand(field.eq(JExpr._null()).cor(field.invoke("isEmpty")));
+            JExpression owned = field.ne(JExpr._null());
+            if (sharedFlag != null) {
+               // Reading a shared list would copy it.
+               owned = owned.cand(JExpr._this().ref(sharedFlag).not());
+            }
+            JBlock _ifList = body._if(owned)._then();
+            // Reading the list moves the pending values into it.
+            JVar list = _ifList.decl(rawType, "list", JExpr._this().invoke("get" + propertyName));
+            final JClass elementClass = getListClass(getBoxedType(fieldOutline)).getTypeParameters().get(0);
+            final boolean managed = FieldType.MANAGED_LIST.equals(fieldType);
+            if (managed && outlineClasses.contains(elementClass)) {
+               createCompactElements(_ifList, fieldOutline, list, prune, reclaimed);
+            }
+            if (managed) {
+               // Only the trailing padding: the indexes of the elements are kept.
+               JForLoop _for = _ifList._if(prune)._then()._for();
+               JVar i = _for.init(codeModel.INT, "i", list.invoke("size").minus(JExpr.lit(1)));
+               _for.test(i.gte(JExpr.lit(0)).cand(list.invoke("get").arg(i).eq(JExpr._null())));
+               _for.update(i.decr());
+               _for.body().invoke(list, "remove").arg(i);
+            }
+            JVar size = _ifList.decl(codeModel.INT, "size", list.invoke("size"));
+            createTrimToSize(_ifList, list, size, reclaimed, elementClass);
+            if (managed) {
+               JBlock _ifDropped = _ifList._if(prune.cand(size.eq(JExpr.lit(0))))._then();
+               _ifDropped.assign(field, JExpr._null());
+               _ifDropped.assignPlus(reclaimed, JExpr.lit(LIST_SIZE));
+            }
+         } else if (rawType.isPrimitive()) {
+            primitive = true;
+         } else {
+            empty = empty.cand(field.eq(JExpr._null()));
+         }
+      }
+      isEmpty.body()._return(primitive ? JExpr.FALSE : empty);
+      body._return(reclaimed);
+   }
+
+   /**
+    * Generates the statements compacting the elements of a managed list,
+    * see {@link #createCompactMethods(ClassOutline)}. The empty elements are
+    * replaced by <code>null</code> with <code>prune</code>.
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the managed list.
+    * @param list - the list variable.
+    * @param prune - the <code>prune</code> parameter.
+    * @param reclaimed - the variable counting the reclaimed bytes.
+    */
+   private void createCompactElements(JBlock block, FieldOutline fieldOutline, JVar list, JVar prune, JVar reclaimed) {
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = elementClass.owner();
+      final JFieldVar elements = sharedElements.get(fieldOutline);
+
+      JForLoop _for = block._for();
+      JVar iterator = _for.init(codeModel.ref(ListIterator.class).narrow(elementClass), "it", list.invoke(
+         "listIterator"));
+      _for.test(iterator.invoke("hasNext"));
+      JVar value = _for.body().decl(elementClass, "value", iterator.invoke("next"));
+      JExpression owned = value.ne(JExpr._null());
+      if (elements != null) {
+         owned = owned.cand(JExpr._this().ref(elements).eq(JExpr._null()).cor(
+            JExpr._this().ref(elements).invoke("contains").arg(value).not()));
+      }
+      JBlock _ifOwned = _for.body()._if(owned)._then();
+      _ifOwned.assignPlus(reclaimed, value.invoke("fluentCompact").arg(prune));
+      JBlock _ifPruned = _ifOwned._if(prune.cand(value.invoke("fluentIsEmpty")))._then();
+      _ifPruned.invoke(iterator, "set").arg(JExpr._null());
+      _ifPruned.assignPlus(reclaimed, JExpr.lit(getShallowSize(elementClass)));
+   }
+
+   /**
+    * Generates the statements trimming the capacity of a list to its size,
+    * and counting the reclaimed bytes of the {@link Vector} lists, see
+    * {@link #createCompactMethods(ClassOutline)}. A list declared with its
+    * implementation type is only trimmed if it is an {@link ArrayList} or a
+    * {@link Vector}.
+    * @param block - the block receiving the statements.
+    * @param list - the list variable.
+    * @param size - the variable holding the size of the list.
+    * @param reclaimed - the variable counting the reclaimed bytes.
+    * @param elementClass - the class of the list elements.
+    */
+   private void createTrimToSize(JBlock block, JVar list, JVar size, JVar reclaimed, JClass elementClass) {
+      final JCodeModel codeModel = elementClass.owner();
+      final JType listType = list.type();
+      boolean arrayList = true;
+      boolean vector = true;
+      if (!isListInterface(listType)) {
+         Class<?> loadedClass = listType instanceof JClass ? loadClass((JClass) listType) : null;
+         arrayList = loadedClass != null && ArrayList.class.isAssignableFrom(loadedClass);
+         vector = loadedClass != null && Vector.class.isAssignableFrom(loadedClass);
+      }
+      JConditional _if = null;
+      if (arrayList) {
+         _if = block._if(list._instanceof(codeModel.ref(ArrayList.class)));
+         // The capacity of an ArrayList cannot be read: its slots are not counted.
+         _if._then().invoke(JExpr.cast(codeModel.ref(ArrayList.class).narrow(elementClass), list), "trimToSize");
+      }
+      if (vector) {
+         JBlock _then = _if == null ? block._if(list._instanceof(codeModel.ref(Vector.class)))._then() : _if._elseif(
+            list._instanceof(codeModel.ref(Vector.class)))._then();
+         JExpression vectorList = JExpr.cast(codeModel.ref(Vector.class).narrow(elementClass), list);
+         _then.assignPlus(reclaimed, JExpr.lit((long) REFERENCE_SIZE).mul(vectorList.invoke("capacity").minus(size)));
+         _then.invoke(vectorList, "trimToSize");
+      }
+   }
+
+   /**
+    * Returns the estimated shallow size of the instances of a class: an
+    * object header, and the declared fields of the class and of its
+    * generated super classes, assuming compressed references.
+    * @param classOutline - the class outline.
+    * @return the estimated size, in bytes, aligned on 8 bytes.
+    */
+   private int getShallowSize(ClassOutline classOutline) {
+      Integer size = shallowSizes.get(classOutline.implClass);
+      if (size == null) {
+         int fieldsSize = classOutline.getSuperClass() == null ? 12 : getShallowSize(classOutline.getSuperClass());
+         for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+            final JType rawType = fieldOutline.getRawType();
+            fieldsSize += rawType.isPrimitive() ? getRecordWidth((JPrimitiveType) rawType) : REFERENCE_SIZE;
+         }
+         size = (fieldsSize + 7) & ~7;
+         shallowSizes.put(classOutline.implClass, size);
+      }
+      return size;
+   }
+
+   /**
+    * Returns the estimated shallow size of the instances of a generated
+    * class, see {@link #getShallowSize(ClassOutline)}.
+    * @param jClass - the class.
+    * @return the estimated size, in bytes.
+    */
+   private int getShallowSize(JClass jClass) {
+      Integer size = shallowSizes.get(jClass);
+      return size != null ? size : 16;
+   }
+
+   /**
+    * <p>
+    * Generates the fork state of a field shared by
+    * <code>fluentFork()</code>, see {@link #createForkMethods(ClassOutline)}:
+    * a flag for the managed children and the lists, and the set of the
+    * shared elements for the managed lists. The getter of a shared list
+    * copies it before returning it, and records its elements as shared. The
+    * generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * private transient boolean itemShared;
+    * private transient Set&lt;Item&gt; itemElementsShared;
+    * 
+    * //...
+    * public List&lt;Item&gt; getItem() {
+    *    if (item == null) {
+    *       item = new ArrayList&lt;Item&gt;();
+    *    }
+    *    if (this.itemShared) {
+    *       List&lt;Item&gt; shared = this.item;
+    *       this.itemShared = false;
+    *       if (shared instanceof Vector) {
+    *          this.item = new Vector&lt;Item&gt;(shared);
+    *       } else if (shared instanceof LinkedList) {
+    *          this.item = new LinkedList&lt;Item&gt;(shared);
+    *       } else {
+    *          this.item = new ArrayList&lt;Item&gt;(shared);
+    *       }
+    *       this.itemElementsShared = Collections.newSetFromMap(new IdentityHashMap&lt;Item, Boolean&gt;());
+    *       this.itemElementsShared.addAll(shared);
+    *    }
+    *    return this.item;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The other fields need no state: the fork and its origin have their own
+    * copy of them.
+    * @param fieldOutline - the field outline.
+    */
+   private void createForkFlags(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final JCodeModel codeModel = implClass.owner();
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final JType rawType = fieldOutline.getRawType();
+      final FieldType fieldType = fieldTypes.get(fieldOutline);
+
+      final JClass listClass = getListClass(getBoxedType(fieldOutline));
+      if (FieldType.MANAGED_FIELD.equals(fieldType)) {
+         if (outlineClasses.contains(rawType)) {
+            sharedFlags.put(fieldOutline, implClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.BOOLEAN, fieldName
+               + "Shared"));
+         }
+         return;
+      }
+      if (listClass == null || (!isListInterface(rawType) && (((JClass) rawType).isInterface()
+         || ((JClass) rawType).isAbstract()))) {
+         // The lists of an unknown implementation are copied by the fork.
+         return;
+      }
+      final JClass elementClass = listClass.getTypeParameters().get(0);
+      final JFieldVar sharedFlag = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.BOOLEAN, fieldName
+         + "Shared");
+      sharedFlags.put(fieldOutline, sharedFlag);
+
+      JBlock unshare = createGetterHook(fieldOutline, JExpr._this().ref(sharedFlag));
+      JVar shared = unshare.decl(rawType, "shared", JExpr.refthis(fieldName));
+      unshare.assign(JExpr._this().ref(sharedFlag), JExpr.FALSE);
+      if (!isListInterface(rawType)) {
+         unshare.assign(JExpr.refthis(fieldName), JExpr._new(rawType));
+         unshare.invoke(JExpr.refthis(fieldName), "addAll").arg(shared);
+      } else {
+         createListCopy(unshare, fieldName, shared, elementClass);
+      }
+
+      if (FieldType.MANAGED_LIST.equals(fieldType) && outlineClasses.contains(elementClass)) {
+         JFieldVar elements = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.ref(Set.class).narrow(
+            elementClass), fieldName + "ElementsShared");
+         sharedElements.put(fieldOutline, elements);
+         unshare.assign(JExpr._this().ref(elements), codeModel.ref(Collections.class).staticInvoke("newSetFromMap")
+            .arg(JExpr._new(codeModel.ref(IdentityHashMap.class).narrow(elementClass, codeModel.ref(Boolean.class)))));
+         unshare.invoke(JExpr._this().ref(elements), "addAll").arg(shared);
+      }
+   }
+
+   /**
+    * Generates the statements copying a shared list into the field, keeping
+    * the usual list implementations.
+    * @param block - the block receiving the statements.
+    * @param fieldName - the name of the list field.
+    * @param shared - the shared list variable.
+    * @param elementClass - the class of the list elements.
+    */
+   private void createListCopy(JBlock block, String fieldName, JVar shared, JClass elementClass) {
+      final JCodeModel codeModel = elementClass.owner();
+      JConditional _ifVector = block._if(shared._instanceof(codeModel.ref(Vector.class)));
+      _ifVector._then().assign(JExpr.refthis(fieldName),
+         JExpr._new(codeModel.ref(Vector.class).narrow(elementClass)).arg(shared));
+      JConditional _ifLinkedList = _ifVector._elseif(shared._instanceof(codeModel.ref(LinkedList.class)));
+      _ifLinkedList._then().assign(JExpr.refthis(fieldName),
+         JExpr._new(codeModel.ref(LinkedList.class).narrow(elementClass)).arg(shared));
+      _ifLinkedList._else().assign(JExpr.refthis(fieldName),
+         JExpr._new(codeModel.ref(ArrayList.class).narrow(elementClass)).arg(shared));
+   }
+
+   /**
+    * <p>
+    * Generates the statements forking a managed child shared with a fork, if
+    * the field has a fork state:
+    * 
+    * <pre>
+    * //...
+    * if (this.shipToShared) {
+    *    this.shipToShared = false;
+    *    if (this.shipTo != null) {
+    *       this.shipTo = this.shipTo.fluentFork();
+    *    }
+    * }
+    * //...
+    * </pre>
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the managed child.
+    */
+   private void createUnshareField(JBlock block, FieldOutline fieldOutline) {
+      final JFieldVar sharedFlag = sharedFlags.get(fieldOutline);
+      if (sharedFlag == null) {
+         return;
+      }
+      final JFieldRef field = JExpr._this().ref(fieldOutline.getPropertyInfo().getName(false));
+      JBlock _ifShared = block._if(JExpr._this().ref(sharedFlag))._then();
+      _ifShared.assign(JExpr._this().ref(sharedFlag), JExpr.FALSE);
+      _ifShared._if(field.ne(JExpr._null()))._then().assign(field, field.invoke("fluentFork"));
+   }
+
+   /**
+    * <p>
+    * Generates the statements forking an element of a managed list shared
+    * with a fork, if the list has a fork state. The list must have been read
+    * through its getter, which unshares the list itself:
+    * 
+    * <pre>
+    * //...
+    * if ((this.itemElementsShared != null) &amp;&amp; this.itemElementsShared.remove(value)) {
+    *    value = value.fluentFork();
+    *    list.set(index, value);
+    * }
+    * //...
+    * </pre>
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the managed list.
+    * @param list - the list variable.
+    * @param index - the index of the element.
+    * @param element - the element variable, not null.
+    */
+   private void createUnshareElement(JBlock block, FieldOutline fieldOutline, JVar list, JVar index, JVar element) {
+      final JFieldVar elements = sharedElements.get(fieldOutline);
+      if (elements == null) {
+         return;
+      }
+      JBlock _ifShared = block._if(JExpr._this().ref(elements).ne(JExpr._null()).cand(
+         JExpr._this().ref(elements).invoke("remove").arg(element)))._then();
+      _ifShared.assign(element, element.invoke("fluentFork"));
+      _ifShared.invoke(list, "set").arg(index).arg(element);
+   }
+
+   /**
+    * <p>
+    * Generates the copy-on-write fork methods of the class. A fork shares the
+    * managed children and the lists of its origin; the first
+    * <code>with*</code> call on a shared child, or the first read of a shared
+    * list, copies it on the side of the caller (see
+    * {@link #createForkFlags(FieldOutline)}), so a fork only costs the paths
+    * written through the fluent API. A shared child modified through its
+    * JAXB accessors is modified on both sides. The generated code looks
+    * like:
+    * 
+    * <pre>
+    * //...
+    * public ShipOrder fluentFork() {
+    *    ShipOrder fork = new ShipOrder();
+    *    this.fluentForkTo(fork);
+    *    return fork;
+    * }
+    * 
+    * protected void fluentForkTo(ShipOrder fork) {
+    *    super.fluentForkTo(fork);
+    *    this.fluentFlush();
+    *    fork.orderPerson = this.orderPerson;
+    *    fork.shipTo = this.shipTo;
+    *    if (this.shipTo != null) {
+    *       this.shipToShared = true;
+    *       fork.shipToShared = true;
+    *    }
+    *    fork.item = this.item;
+    *    if (this.item != null) {
+    *       this.itemShared = true;
+    *       fork.itemShared = true;
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * With the {@value #THREAD_SAFE_OPTION} option, the published flags of the
+    * shared children are cleared, so that they are forked under the lock. An
+    * abstract class only declares <code>fluentFork()</code>.
+    * @param classOutline - the class outline.
+    */
+   private void createForkMethods(ClassOutline classOutline) {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod forkTo = implClass.method(JMod.PROTECTED, codeModel.VOID, "fluentForkTo");
+      JVar fork = forkTo.param(implClass, "fork");
+      JBlock body = forkTo.body();
+      if (classOutline.getSuperClass() != null) {
+         body.invoke(JExpr._super(), "fluentForkTo").arg(fork);
+      }
+      if (flushMethods.containsKey(implClass)) {
+         body.invoke(JExpr._this(), FLUSH_METHOD);
+      }
+      for (FieldOutline fieldOutline : classOutline.getDeclaredFields()) {
+         final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+         final JFieldVar sharedFlag = sharedFlags.get(fieldOutline);
+         if (sharedFlag == null && isList(getBoxedType(fieldOutline))) {
+            body._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then().invoke(
+               fork.invoke("get" + fieldOutline.getPropertyInfo().getName(true)), "addAll").arg(JExpr.refthis(fieldName));
+            continue;
+         }
+         body.assign(fork.ref(fieldName), JExpr.refthis(fieldName));
+         if (sharedFlag != null) {
+            JBlock _ifFieldThen = body._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then();
+            _ifFieldThen.assign(JExpr._this().ref(sharedFlag), JExpr.TRUE);
+            _ifFieldThen.assign(fork.ref(sharedFlag), JExpr.TRUE);
+            JFieldVar published = implClass.fields().get(fieldName + "Published");
+            if (threadSafe && published != null) {
+               _ifFieldThen.assign(JExpr._this().ref(published), JExpr.FALSE);
+            }
+         }
+      }
+
+      if (implClass.isAbstract()) {
+         implClass.method(JMod.PUBLIC | JMod.ABSTRACT, implClass, "fluentFork");
+      } else {
+         JMethod method = implClass.method(JMod.PUBLIC, implClass, "fluentFork");
+         JVar result = method.body().decl(implClass, "fork", createNewInstance(implClass));
+         method.body().invoke(JExpr._this(), forkTo).arg(result);
+         method.body()._return(result);
+      }
+   }
+
+   /**
+    * Returns the default value of a field of the given type.
+    * @param type - the type of the field.
+    * @return <code>false</code>, <code>0</code> or <code>null</code>.
+    */
+   private JExpression createDefaultValue(JType type) {
+      if (!type.isPrimitive()) {
+         return JExpr._null();
+      }
+      return type == type.owner().BOOLEAN ? JExpr.FALSE : JExpr.lit(0);
+   }
+
+   /**
+    * Inserts a conditional block right before the final <code>return</code>
+    * statement of the JAXB getter of the field, where the field is known to
+    * be initialized.
+    * @param fieldOutline - the field outline.
+    * @param condition - the condition of the inserted block.
+    * @return the body of the inserted block.
+    */
+   private JBlock createGetterHook(FieldOutline fieldOutline, JExpression condition) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+
+      JBlock body = implClass.getMethod("get" + propertyName, new JType[0]).body();
+      body.pos(body.getContents().size() - 1);
+      JBlock hook = body._if(condition)._then();
+      body.pos(body.getContents().size());
+      return hook;
+   }
+
+   /**
+    * <p>
+    * Returns the <code>fluentFlush()</code> method of the class, creating it
+    * on first use. The method moves the values held outside of the JAXB
+    * fields into them, and is called before marshalling:
+    * 
+    * <pre>
+    * //...
+    * protected void fluentFlush() {
+    *    //...
+    * }
+    * 
+    * private void beforeMarshal(Marshaller marshaller) {
+    *    this.fluentFlush();
+    * }
+    * //...
+    * </pre>
+    * @param implClass - the class.
+    * @return the flush method.
+    */
+   private JMethod getFlushMethod(JDefinedClass implClass) {
+      JMethod flushMethod = flushMethods.get(implClass);
+      if (flushMethod == null) {
+         flushMethod = implClass.method(JMod.PROTECTED, implClass.owner().VOID, FLUSH_METHOD);
+         flushMethods.put(implClass, flushMethod);
+
+         final JClass marshallerClass = implClass.owner().ref(Marshaller.class);
+         JMethod beforeMarshal = implClass.getMethod("beforeMarshal", new JType[] { marshallerClass });
+         if (beforeMarshal == null) {
+            beforeMarshal = implClass.method(JMod.PRIVATE, implClass.owner().VOID, "beforeMarshal");
+            beforeMarshal.param(marshallerClass, "marshaller");
+            beforeMarshal.body().invoke(flushMethod);
+         } else {
+            int pos = beforeMarshal.body().pos(0);
+            beforeMarshal.body().invoke(flushMethod);
+            beforeMarshal.body().pos(pos + 1);
+         }
+      }
+      return flushMethod;
+   }
+
+   /**
+    * <p>
+    * Generates the shared empty instance of the classes read by the
+    * <code>peek*</code> methods (see {@link #createPeekMethod(FieldOutline)}).
+    * The instance is read-only: its list getters, which would create the
+    * lists, return empty lists, and its setters and the methods of this
+    * plugin writing its fields (see
+    * {@link #createMutatorMethod(JDefinedClass, JType, String)}) throw an
+    * {@link UnsupportedOperationException}. The other methods are inherited.
+    * It is created last, so that all the generated methods are known. The
+    * generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public static final ShipTo FLUENT_EMPTY = new ShipTo.FluentEmpty();
+    * 
+    * //...
+    * private static final class FluentEmpty extends ShipTo {
+    *    public void setCity(String value) {
+    *       throw new UnsupportedOperationException("ShipTo.FLUENT_EMPTY is read-only");
+    *    }
+    *    //...
+    * }
+    * 
+    * private static final class FluentEmpty extends ShipOrder {
+    *    public List&lt;ShipOrder.Item&gt; getItem() {
+    *       return Collections.emptyList();
+    *    }
+    *    //...
+    * }
+    * //...
+    * </pre>
+    * A class already defining a <code>FluentEmpty</code> class is reported
+    * as an error.
+    * @param outline - the outline.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private void createEmptyInstances(Outline outline) throws SAXException {
+      for (ClassOutline classOutline : outline.getClasses()) {
+         final JDefinedClass implClass = classOutline.implClass;
+         if (!emptyClasses.contains(implClass)) {
+            continue;
+         }
+         final JCodeModel codeModel = implClass.owner();
+         final String message = implClass.name() + ".FLUENT_EMPTY is read-only";
+
+         JDefinedClass emptyClass;
+         try {
+            emptyClass = implClass._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, "FluentEmpty");
+         } catch (JClassAlreadyExistsException e) {
+            errorHandler.error(new SAXParseException(implClass.fullName()
+               + " already defines FluentEmpty: its empty instance is not generated", classOutline.target.getLocator()));
+            continue;
+         }
+         emptyClass._extends(implClass);
+         // The methods of the class hide the methods of its super classes.
+         Set<String> signatures = new HashSet<String>();
+         for (ClassOutline current = classOutline; current != null; current = current.getSuperClass()) {
+            final List<JMethod> getters = new ArrayList<JMethod>();
+            final List<JMethod> mutators = new ArrayList<JMethod>();
+            for (FieldOutline fieldOutline : current.getDeclaredFields()) {
+               final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+               for (JMethod method : current.implClass.methods()) {
+                  if (fieldOutline.getPropertyInfo().isCollection() && method.name().equals("get" + propertyName)
+                     && method.listParams().length == 0) {
+                     getters.add(method);
+                  } else if (method.name().equals("set" + propertyName) && method.listParams().length == 1) {
+                     mutators.add(method);
+                  }
+               }
+            }
+            if (mutatorMethods.containsKey(current.implClass)) {
+               mutators.addAll(mutatorMethods.get(current.implClass));
+            }
+            for (JMethod method : getters) {
+               if (!signatures.add(method.name())) {
+                  continue;
+               }
+               final JType returnType = method.type();
+               JMethod override = emptyClass.method(JMod.PUBLIC, returnType, method.name());
+               if (isListInterface(returnType)) {
+                  override.body()._return(codeModel.ref(Collections.class).staticInvoke("emptyList"));
+               } else {
+                  // A list class: one empty list, shared as the instance.
+                  JFieldVar empty = emptyClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, returnType,
+                     "FLUENT_EMPTY_" + method.name().substring(3).toUpperCase(), JExpr._new(returnType));
+                  override.body()._return(empty);
+               }
+            }
+            for (JMethod method : mutators) {
+               final StringBuilder signature = new StringBuilder(method.name());
+               for (JType paramType : method.listParamTypes()) {
+                  signature.append(',').append(paramType.fullName());
+               }
+               if (!signatures.add(signature.toString())) {
+                  continue;
+               }
+               JMethod override = emptyClass.method(JMod.PUBLIC, method.type(), method.name());
+               for (JVar param : method.listParams()) {
+                  override.param(param.type(), param.name());
+               }
+               override.body()._throw(JExpr._new(codeModel.ref(UnsupportedOperationException.class)).arg(message));
+            }
+         }
+         implClass.field(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, implClass, "FLUENT_EMPTY", JExpr._new(emptyClass));
+      }
+   }
+
+   /**
+    * Makes the flush methods call the flush method of their closest generated
+    * super class, if any.
+    * @param outline - the outline.
+    */
+   private void linkFlushMethods(Outline outline) {
+      for (ClassOutline classOutline : outline.getClasses()) {
+         JMethod flushMethod = flushMethods.get(classOutline.implClass);
+         if (flushMethod != null) {
+            for (ClassOutline superOutline = classOutline.getSuperClass(); superOutline != null; superOutline = superOutline
+               .getSuperClass()) {
+               if (flushMethods.containsKey(superOutline.implClass)) {
+                  JBlock body = flushMethod.body();
+                  body.pos(0);
+                  body.invoke(JExpr._super(), FLUSH_METHOD);
+                  body.pos(body.getContents().size());
+                  break;
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * <p>
+    * Generates the statements growing the list up to <code>index</code> in
+    * one step, depending on the runtime type of the list. The generated
+    * statements look like:
+    * 
+    * <pre>
+    * //...
+    * if (list instanceof Vector) {
+    *    ((Vector&lt;PropertyClass&gt;) list).setSize(index + 1);
+    * } else if (list instanceof ArrayList) {
+    *    ((ArrayList&lt;PropertyClass&gt;) list).ensureCapacity(index + 1);
+    *    list.addAll(Collections.nCopies(index + 1 - size, (PropertyClass) null));
+    * } else if (list instanceof LinkedList) {
+    *    list.addAll(Collections.nCopies(index + 1 - size, (PropertyClass) null));
+    * } else if (list instanceof CustomList) {
+    *    ((CustomList&lt;PropertyClass&gt;) list).ensureCapacity(index + 1);
+    *    list.addAll(Collections.nCopies(index + 1 - size, (PropertyClass) null));
+    * } else {
+    *    for (int i = size; (i &lt;= index); i++) {
+    *       list.add(null);
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The <code>CustomList</code> branch is generated for the collection type
+    * of the bindings (see {@link #getCustomListClass(FieldOutline)}), with its
+    * <code>ensureCapacity(int)</code> method if it has one. A list declared
+    * with its implementation type rather than {@link List} is grown the same
+    * way, without the dispatch.
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the list.
+    * @param list - the list variable.
+    * @param size - the variable holding the current size of the list.
+    * @param index - the index which must be reachable.
+    * @param elementClass - the class of the list elements.
+    */
+   private void createPresizeList(JBlock block, FieldOutline fieldOutline, JVar list, JVar size, JVar index,
+      JClass elementClass) {
+      final JCodeModel codeModel = elementClass.owner();
+      if (!isListInterface(list.type())) {
+         // The implementation is known: its own bulk methods are used.
+         if (hasEnsureCapacity(list.type())) {
+            block.invoke(list, "ensureCapacity").arg(index.plus(JExpr.lit(1)));
+         }
+         block.invoke(list, "addAll").arg(createNullCopies(codeModel, size, index, elementClass));
+         return;
+      }
+      final JClass vectorClass = codeModel.ref(Vector.class).narrow(elementClass);
+      final JClass arrayListClass = codeModel.ref(ArrayList.class).narrow(elementClass);
+
+      JConditional _ifVector = block._if(list._instanceof(codeModel.ref(Vector.class)));
+      _ifVector._then().invoke(JExpr.cast(vectorClass, list), "setSize").arg(index.plus(JExpr.lit(1)));
+
+      JConditional _ifArrayList = _ifVector._else()._if(list._instanceof(codeModel.ref(ArrayList.class)));
+      JBlock _ifArrayListThen = _ifArrayList._then();
+      _ifArrayListThen.invoke(JExpr.cast(arrayListClass, list), "ensureCapacity").arg(index.plus(JExpr.lit(1)));
+      _ifArrayListThen.invoke(list, "addAll").arg(createNullCopies(codeModel, size, index, elementClass));
+
+      JConditional _ifLinkedList = _ifArrayList._else()._if(list._instanceof(codeModel.ref(LinkedList.class)));
+      _ifLinkedList._then().invoke(list, "addAll").arg(createNullCopies(codeModel, size, index, elementClass));
+
+      JBlock _else = _ifLinkedList._else();
+      final JClass customListClass = getCustomListClass(fieldOutline);
+      if (customListClass != null) {
+         JConditional _ifCustomList = _else._if(list._instanceof(customListClass));
+         if (hasEnsureCapacity(customListClass)) {
+            _ifCustomList._then().invoke(castList(customListClass, list, elementClass), "ensureCapacity").arg(
+               index.plus(JExpr.lit(1)));
+         }
+         _ifCustomList._then().invoke(list, "addAll").arg(createNullCopies(codeModel, size, index, elementClass));
+         _else = _ifCustomList._else();
+      }
+      JForLoop _for = _else._for();
+      JVar i = _for.init(codeModel.INT, "i", size);
+      _for.test(i.lte(index));
+      _for.update(i.incr());
+      _for.body().invoke(list, "add").arg(JExpr._null());
+   }
+
+   /**
+    * <p>
+    * Generates the statements growing the capacity of the list, depending on
+    * the runtime type of the list. The generated statements look like:
+    * 
+    * <pre>
+    * //...
+    * if (list instanceof ArrayList) {
+    *    ((ArrayList&lt;PropertyClass&gt;) list).ensureCapacity(capacity);
+    * } else if (list instanceof Vector) {
+    *    ((Vector&lt;PropertyClass&gt;) list).ensureCapacity(capacity);
+    * } else if (list instanceof CustomList) {
+    *    ((CustomList&lt;PropertyClass&gt;) list).ensureCapacity(capacity);
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The <code>CustomList</code> branch is generated for the collection type
+    * of the bindings if it has an <code>ensureCapacity(int)</code> method
+    * (see {@link #getCustomListClass(FieldOutline)}). A list declared with its
+    * implementation type rather than {@link List} is grown with that method,
+    * if any, without the dispatch.
+    * @param block - the block receiving the statements.
+    * @param fieldOutline - the field outline of the list.
+    * @param list - the list variable.
+    * @param capacity - the minimum capacity.
+    * @param elementClass - the class of the list elements.
+    */
+   private void createEnsureCapacity(JBlock block, FieldOutline fieldOutline, JVar list, JExpression capacity,
+      JClass elementClass) {
+      final JCodeModel codeModel = elementClass.owner();
+      if (!isListInterface(list.type())) {
+         if (hasEnsureCapacity(list.type())) {
+            block.invoke(list, "ensureCapacity").arg(capacity);
+         }
+         return;
+      }
+      JConditional _ifArrayList = block._if(list._instanceof(codeModel.ref(ArrayList.class)));
+      _ifArrayList._then().invoke(JExpr.cast(codeModel.ref(ArrayList.class).narrow(elementClass), list),
+         "ensureCapacity").arg(capacity);
+      JConditional _ifVector = _ifArrayList._elseif(list._instanceof(codeModel.ref(Vector.class)));
+      _ifVector._then().invoke(JExpr.cast(codeModel.ref(Vector.class).narrow(elementClass), list), "ensureCapacity")
+         .arg(capacity);
+      final JClass customListClass = getCustomListClass(fieldOutline);
+      if (customListClass != null && hasEnsureCapacity(customListClass)) {
+         _ifVector._elseif(list._instanceof(customListClass))._then().invoke(
+            castList(customListClass, list, elementClass), "ensureCapacity").arg(capacity);
+      }
+   }
+
+   /**
+    * Returns the <code>Collections.nCopies(index + 1 - size, (PropertyClass) null)</code>
+    * expression.
+    * @param codeModel - the code model.
+    * @param size - the variable holding the current size of the list.
+    * @param index - the index which must be reachable.
+    * @param elementClass - the class of the list elements.
+    * @return the expression.
+    */
+   private JExpression createNullCopies(JCodeModel codeModel, JVar size, JVar index, JClass elementClass) {
+      return codeModel.ref(Collections.class).staticInvoke("nCopies").arg(index.plus(JExpr.lit(1)).minus(size)).arg(
+         JExpr.cast(elementClass, JExpr._null()));
+   }
+
+   /**
+    * <p>
+    * Generates the <code>withNew&lt;property&gt;()</code> method. The generated
+    * body method looks like:
+    * 
+    * <pre>
+    * //...
+    * PropertyClass property;
+    * 
+    * //...
+    * public PropertyClass withNewItem() {
+    *    PropertyClass value = new PropertyClass();
+    *    this.getItem().add(value);
+    *    return value;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * With the {@value #CONCURRENT_OPTION} option, the value is appended to the
+    * pending queue of the list instead, see
+    * {@link #getPendingQueue(FieldOutline)}. With the
+    * {@value #OFF_HEAP_OPTION} option, a list of fixed-width elements appends
+    * a record to its off-heap store instead, see
+    * {@link #createOffHeapWithNewMethod(FieldOutline)}. The off-heap stores
+    * and their shared cursor are not thread-safe, so the
+    * {@value #OFF_HEAP_OPTION} option is ignored, with a warning, along with
+    * the {@value #CONCURRENT_OPTION} option.
+    * @param fieldOutline
+    */
+   protected void createListWithNewMethod(FieldOutline fieldOutline) {
+      if (offHeapStores.containsKey(fieldOutline)) {
+         createOffHeapWithNewMethod(fieldOutline);
+         return;
+      }
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+
+      JMethod method = createMutatorMethod(implClass, elementClass, "withNew" + propertyName);
+
+      JBlock body = method.body();
+
+      JVar element = body.decl(elementClass, "value", createNewInstance(elementClass));
+
+      if (concurrent) {
+         body.invoke(JExpr.invoke(getPendingQueue(fieldOutline)), "add").arg(element);
+      } else {
+         body.invoke(JExpr._this().invoke("get" + propertyName), "add").arg(element);
+      }
+
+      body._return(element);
+   }
+
+   /**
+    * <p>
+    * Generates the <code>withNew&lt;property&gt;s(int count)</code> method.
+    * The new elements are added to the list in a single <code>addAll</code>
+    * call, so the list grows at most once. The generated body method looks
+    * like:
+    * 
+    * <pre>
+    * //...
+    * PropertyClass property;
+    * 
+    * //...
+    * public PropertyClass[] withNewItems(int count) {
+    *    PropertyClass[] values = new PropertyClass[count];
+    *    for (int i = 0; (i &lt; count); i++) {
+    *       values[i] = new PropertyClass();
+    *    }
+    *    this.getItem().addAll(Arrays.asList(values));
+    *    return values;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The method is generated with the {@value #BATCH_OPTION} option. With the
+    * {@value #CONCURRENT_OPTION} option, the values are appended to the
+    * pending queue of the list instead.
+    * @param fieldOutline
+    */
+   protected void createListWithNewArrayMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod method = createMutatorMethod(implClass, elementClass.array(), "withNew" + propertyName + "s");
+      JVar count = method.param(codeModel.INT, "count");
+
+      JBlock body = method.body();
+
+      JVar values = body.decl(elementClass.array(), "values", JExpr.newArray(elementClass, count));
+      JForLoop _for = body._for();
+      JVar i = _for.init(codeModel.INT, "i", JExpr.lit(0));
+      _for.test(i.lt(count));
+      _for.update(i.incr());
+      _for.body().assign(values.component(i), createNewInstance(elementClass));
+
+      // The off-heap records are moved into the list first.
+      JExpression target = concurrent ? JExpr.invoke(getPendingQueue(fieldOutline)) : JExpr._this().invoke("get"
+         + propertyName);
+      body.invoke(target, "addAll").arg(codeModel.ref(Arrays.class).staticInvoke("asList").arg(values));
+
+      body._return(values);
+   }
+
+   /**
+    * <p>
+    * Generates the <code>with&lt;property&gt;All(Collection)</code> method.
+    * The values are appended in a single <code>addAll</code> call, which
+    * grows the list at most once. The generated body method looks like:
+    * 
+    * <pre>
+    * //...
+    * public ShipOrder withItemAll(Collection&lt;? extends PropertyClass&gt; values) {
+    *    this.getItem().addAll(values);
+    *    return this;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The method is generated with the {@value #BULK_OPTION} option. With the
+    * {@value #CONCURRENT_OPTION} option, the values are appended to the
+    * pending queue of the list instead.
+    * @param fieldOutline - the field outline of the managed list.
+    */
+   protected void createListWithAllMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod method = createMutatorMethod(implClass, implClass, "with" + propertyName + "All");
+      JVar values = method.param(codeModel.ref(Collection.class).narrow(elementClass.wildcard()), "values");
+
+      // The off-heap records are moved into the list first.
+      JExpression target = concurrent ? JExpr.invoke(getPendingQueue(fieldOutline)) : JExpr._this().invoke("get"
+         + propertyName);
+      method.body().invoke(target, "addAll").arg(values);
+      method.body()._return(JExpr._this());
+   }
+
+   /**
+    * <p>
+    * Generates the <code>adopt&lt;property&gt;(List)</code> method, which
+    * replaces the values of the list. The given list becomes the JAXB list
+    * without copy when it is an instance of the class of the current list,
+    * else its values are copied. The generated body method looks like:
+    * 
+    * <pre>
+    * //...
+    * public ShipOrder adoptItem(List&lt;PropertyClass&gt; values) {
+    *    List&lt;PropertyClass&gt; list = this.getItem();
+    *    if (list.getClass().isInstance(values)) {
+    *       this.item = values;
+    *    } else {
+    *       list.clear();
+    *       list.addAll(values);
+    *    }
+    *    return this;
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The method is generated with the {@value #BULK_OPTION} option. Reading
+    * the list first moves the values held outside of the JAXB field into it,
+    * so they are replaced as well. An adopted list is owned by the instance
+    * and must not be modified by the caller anymore.
+    * @param fieldOutline - the field outline of the managed list.
+    */
+   protected void createListAdoptMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      JMethod method = createMutatorMethod(implClass, implClass, "adopt" + propertyName);
+      JVar values = method.param(fieldOutline.getRawType(), "values");
+
+      JBlock body = method.body();
+      JVar list = body.decl(fieldOutline.getRawType(), "list", JExpr._this().invoke("get" + propertyName));
+      JConditional _ifInstance = body._if(list.invoke("getClass").invoke("isInstance").arg(values));
+      _ifInstance._then().assign(JExpr.refthis(fieldName), values);
+      _ifInstance._else().invoke(list, "clear");
+      _ifInstance._else().invoke(list, "addAll").arg(values);
+      if (sharedElements.containsKey(fieldOutline)) {
+         body.assign(JExpr._this().ref(sharedElements.get(fieldOutline)), JExpr._null());
+      }
+      body._return(JExpr._this());
+   }
+
+   /**
+    * <p>
+    * Generates the <code>peek&lt;property&gt;()</code> method, which reads a
+    * managed list without creating it: a missing list is read as the empty
+    * list. The values held outside of the JAXB list are moved into it first,
+    * by the getter. The returned list is an unmodifiable view of the JAXB
+    * list, so it cannot be used to write the list behind the fork flags or the
+    * pending values. The generated body method looks like:
+    * 
+    * <pre>
+    * //...
+    * public List&lt;PropertyClass&gt; peekItem() {
+    *    List&lt;PropertyClass&gt; list = this.item;
+    *    if (this.itemSparse != null) {
+    *       list = this.getItem();
+    *    }
+    *    if (list == null) {
+    *       return Collections.emptyList();
+    *    }
+    *    return Collections.unmodifiableList(list);
+    * }
+    * //...
+    * </pre>
+    * @param fieldOutline - the field outline of the managed list.
+    */
+   protected void createListPeekMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod method = implClass.method(JMod.PUBLIC, getListClass(getBoxedType(fieldOutline)), "peek" + propertyName);
+      JBlock body = method.body();
+      JVar list = body.decl(method.type(), "list", JExpr.refthis(fieldName));
+
+      JFieldVar sparseField = implClass.fields().get(fieldName + "Sparse");
+      if (sparseField != null) {
+         body._if(JExpr.refthis(sparseField.name()).ne(JExpr._null()))._then().assign(list,
+            JExpr._this().invoke("get" + propertyName));
+      }
+      if (implClass.getMethod("fluentPending" + propertyName, new JType[0]) != null) {
+         body._if(hasPendingValues(fieldOutline))._then().assign(list, JExpr._this().invoke("get" + propertyName));
+      }
+      JFieldVar storeSizeField = implClass.fields().get(fieldName + "StoreSize");
+      if (storeSizeField != null) {
+         body._if(JExpr.refthis(storeSizeField.name()).gt(JExpr.lit(0)))._then().assign(list,
+            JExpr._this().invoke("get" + propertyName));
+      }
+      body._if(list.eq(JExpr._null()))._then()._return(codeModel.ref(Collections.class).staticInvoke("emptyList"));
+      body._return(codeModel.ref(Collections.class).staticInvoke("unmodifiableList").arg(list));
+   }
+
+   /**
+    * <p>
+    * Generates the streaming accessors of a managed list. Once a sink is set,
+    * <code>streamNew&lt;property&gt;()</code> returns a new element which is
+    * not added to the list: it is written to the sink when the next element
+    * is requested, or by <code>flush&lt;property&gt;()</code>, so only one
+    * element is held in memory. Without sink, the element is added to the
+    * list. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public interface ItemSink {
+    *    void write(PropertyClass value) throws JAXBException;
+    * }
+    * 
+    * private transient ItemSink itemSink;
+    * private transient PropertyClass itemStreamed;
+    * 
+    * //...
+    * public void setItemSink(ItemSink sink) throws JAXBException {
+    *    this.flushItem();
+    *    this.itemSink = sink;
+    * }
+    * 
+    * public PropertyClass streamNewItem() throws JAXBException {
+    *    this.flushItem();
+    *    PropertyClass value = new PropertyClass();
+    *    if (this.itemSink == null) {
+    *       this.getItem().add(value);
+    *    } else {
+    *       this.itemStreamed = value;
+    *    }
+    *    return value;
+    * }
+    * 
+    * public void flushItem() throws JAXBException {
+    *    PropertyClass value = this.itemStreamed;
+    *    if (value != null) {
+    *       this.itemStreamed = null;
+    *       this.itemSink.write(value);
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * A sink typically marshals each element as a fragment between the start
+    * and end tags of the parent element, written by the caller on the same
+    * <code>XMLStreamWriter</code>.
+    * <p>
+    * A class already defining the sink interface is reported as an error, and
+    * the list gets no streaming accessors.
+    * @param fieldOutline - the field outline of the managed list.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   protected void createListStreamMethods(FieldOutline fieldOutline) throws SAXException {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+      final JClass exceptionClass = codeModel.ref(JAXBException.class);
+
+      JDefinedClass sinkInterface;
+      try {
+         sinkInterface = implClass._interface(JMod.PUBLIC, propertyName + "Sink");
+      } catch (JClassAlreadyExistsException e) {
+         errorHandler.error(new SAXParseException(implClass.fullName() + " already defines " + propertyName
+            + "Sink: its streaming accessors are not generated", fieldOutline.getPropertyInfo().getLocator()));
+         return;
+      }
+      JMethod write = sinkInterface.method(JMod.NONE, codeModel.VOID, "write");
+      write.param(elementClass, "value");
+      write._throws(exceptionClass);
+
+      JFieldVar sinkField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, sinkInterface, fieldName + "Sink");
+      JFieldVar streamedField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, elementClass, fieldName + "Streamed");
+
+      JMethod flush = createMutatorMethod(implClass, codeModel.VOID, "flush" + propertyName);
+      flush._throws(exceptionClass);
+      JVar streamed = flush.body().decl(elementClass, "value", JExpr.refthis(streamedField.name()));
+      JBlock _ifStreamed = flush.body()._if(streamed.ne(JExpr._null()))._then();
+      _ifStreamed.assign(JExpr.refthis(streamedField.name()), JExpr._null());
+      _ifStreamed.invoke(JExpr.refthis(sinkField.name()), write).arg(streamed);
+
+      JMethod setSink = createMutatorMethod(implClass, codeModel.VOID, "set" + propertyName + "Sink");
+      setSink._throws(exceptionClass);
+      JVar sink = setSink.param(sinkInterface, "sink");
+      setSink.body().invoke(JExpr._this(), flush);
+      setSink.body().assign(JExpr.refthis(sinkField.name()), sink);
+
+      JMethod method = createMutatorMethod(implClass, elementClass, "streamNew" + propertyName);
+      method._throws(exceptionClass);
+      JBlock body = method.body();
+      body.invoke(JExpr._this(), flush);
+      JVar element = body.decl(elementClass, "value", createNewInstance(elementClass));
+      JConditional _ifNoSink = body._if(JExpr.refthis(sinkField.name()).eq(JExpr._null()));
+      _ifNoSink._then().invoke(JExpr._this().invoke("get" + propertyName), "add").arg(element);
+      _ifNoSink._else().assign(JExpr.refthis(streamedField.name()), element);
+      body._return(element);
+   }
+
+   /**
+    * <p>
+    * Generates the primitive accessors of a list of primitive wrappers. The
+    * values are appended to a primitive array, and only boxed into the JAXB
+    * list by the getter, or before marshalling (see
+    * {@link #getFlushMethod(JDefinedClass)}). The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * private transient int[] valueBuffer;
+    * private transient int valueBufferSize;
+    * 
+    * //...
+    * public List&lt;Integer&gt; getValue() {
+    *    if (value == null) {
+    *       value = new ArrayList&lt;Integer&gt;();
+    *    }
+    *    if (this.valueBufferSize &gt; 0) {
+    *       List&lt;Integer&gt; list = this.value;
+    *       int[] buffer = this.valueBuffer;
+    *       int size = this.valueBufferSize;
+    *       this.valueBuffer = null;
+    *       this.valueBufferSize = 0;
+    *       for (int i = 0; (i &lt; size); i++) {
+    *          list.add(buffer[i]);
+    *       }
+    *    }
+    *    return this.value;
+    * }
+    * 
+    * public Telemetry withValueValues(int[] values) {
+    *    if (this.value != null) {
+    *       this.value.clear();
+    *    }
+    *    this.valueBuffer = values.clone();
+    *    this.valueBufferSize = values.length;
+    *    return this;
+    * }
+    * 
+    * public Telemetry addValue(int value) {
+    *    int[] buffer = this.valueBuffer;
+    *    if (buffer == null) {
+    *       buffer = new int[16];
+    *       this.valueBuffer = buffer;
+    *    } else if (this.valueBufferSize == buffer.length) {
+    *       buffer = Arrays.copyOf(buffer, (buffer.length * 2));
+    *       this.valueBuffer = buffer;
+    *    }
+    *    buffer[this.valueBufferSize++] = value;
+    *    return this;
+    * }
+    * 
+    * public int getValueCount() {
+    *    return (((this.value == null) ? 0 : this.value.size()) + this.valueBufferSize);
+    * }
+    * 
+    * public int[] getValueAs(int[] dest) {
+    *    List&lt;Integer&gt; list = this.value;
+    *    int listSize = ((list == null) ? 0 : list.size());
+    *    int size = (listSize + this.valueBufferSize);
+    *    int[] values = ((dest.length &gt;= size) ? dest : new int[size]);
+    *    if (list != null) {
+    *       int i = 0;
+    *       for (Integer element : list) {
+    *          values[i++] = element;
+    *       }
+    *    }
+    *    if (this.valueBufferSize &gt; 0) {
+    *       System.arraycopy(this.valueBuffer, 0, values, listSize, this.valueBufferSize);
+    *    }
+    *    return values;
+    * }
+    * //...
+    * </pre>
+    * @param fieldOutline - the field outline of the primitive list.
+    */
+   protected void createPrimitiveListMethods(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JType primitiveType = elementClass.unboxify();
+      final JCodeModel codeModel = implClass.owner();
+      final JType listType = fieldOutline.getRawType();
+
+      JFieldVar bufferField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, primitiveType.array(), fieldName + "Buffer");
+      JFieldVar sizeField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.INT, fieldName + "BufferSize");
+      JFieldRef buffered = JExpr._this().ref(sizeField);
+
+      // Getter: boxes the buffered values into the list.
+      JBlock merge = createGetterHook(fieldOutline, buffered.gt(JExpr.lit(0)));
+      JVar mergeList = merge.decl(listType, "list", JExpr.refthis(fieldName));
+      JVar mergeBuffer = merge.decl(primitiveType.array(), "buffer", JExpr._this().ref(bufferField));
+      JVar mergeSize = merge.decl(codeModel.INT, "size", buffered);
+      merge.assign(JExpr._this().ref(bufferField), JExpr._null());
+      merge.assign(JExpr._this().ref(sizeField), JExpr.lit(0));
+      JForLoop _for = merge._for();
+      JVar i = _for.init(codeModel.INT, "i", JExpr.lit(0));
+      _for.test(i.lt(mergeSize));
+      _for.update(i.incr());
+      _for.body().invoke(mergeList, "add").arg(mergeBuffer.component(i));
+
+      // Flush: reading the list is enough.
+      getFlushMethod(implClass).body()._if(buffered.gt(JExpr.lit(0)))._then().invoke("get" + propertyName);
+
+      // Replaces the values.
+      JMethod with = createMutatorMethod(implClass, implClass, "with" + propertyName + "Values");
+      JVar values = with.param(primitiveType.array(), "values");
+      if (sharedFlags.containsKey(fieldOutline)) {
+         // A shared list is dropped rather than cleared.
+         JFieldRef shared = JExpr._this().ref(sharedFlags.get(fieldOutline));
+         JBlock _ifShared = with.body()._if(shared)._then();
+         _ifShared.assign(shared, JExpr.FALSE);
+         _ifShared.assign(JExpr.refthis(fieldName), JExpr._null());
+      }
+      with.body()._if(JExpr.refthis(fieldName).ne(JExpr._null()))._then().invoke(JExpr.refthis(fieldName), "clear");
+      with.body().assign(JExpr._this().ref(bufferField), values.invoke("clone"));
+      with.body().assign(buffered, values.ref("length"));
+      with.body()._return(JExpr._this());
+
+      // Appends a value.
+      JMethod add = createMutatorMethod(implClass, implClass, "add" + propertyName);
+      JVar value = add.param(primitiveType, "value");
+      JVar buffer = add.body().decl(primitiveType.array(), "buffer", JExpr._this().ref(bufferField));
+      JConditional _ifNoBuffer = add.body()._if(buffer.eq(JExpr._null()));
+      _ifNoBuffer._then().assign(buffer, JExpr.newArray(primitiveType, 16));
+      _ifNoBuffer._then().assign(JExpr._this().ref(bufferField), buffer);
+      JBlock _ifFull = _ifNoBuffer._elseif(buffered.eq(buffer.ref("length")))._then();
+      _ifFull.assign(buffer, codeModel.ref(Arrays.class).staticInvoke("copyOf").arg(buffer).arg(
+         buffer.ref("length").mul(JExpr.lit(2))));
+      _ifFull.assign(JExpr._this().ref(bufferField), buffer);
+      add.body().assign(buffer.component(JExpr._this().ref(sizeField).incr()), value);
+      add.body()._return(JExpr._this());
+
+      // Counts the values.
+      JMethod count = implClass.method(JMod.PUBLIC, codeModel.INT, "get" + propertyName + "Count");
+      count.body()._return(
+         JOp.cond(JExpr.refthis(fieldName).eq(JExpr._null()), JExpr.lit(0), JExpr.refthis(fieldName).invoke("size"))
+            .plus(buffered));
+
+      // Copies the values.
+      JMethod as = implClass.method(JMod.PUBLIC, primitiveType.array(), "get" + propertyName + "As");
+      JVar dest = as.param(primitiveType.array(), "dest");
+      JBlock body = as.body();
+      JVar list = body.decl(listType, "list", JExpr.refthis(fieldName));
+      JVar listSize = body.decl(codeModel.INT, "listSize", JOp.cond(list.eq(JExpr._null()), JExpr.lit(0), list
+         .invoke("size")));
+      JVar size = body.decl(codeModel.INT, "size", listSize.plus(buffered));
+      JVar result = body.decl(primitiveType.array(), "values", JOp.cond(dest.ref("length").gte(size), dest, JExpr
+         .newArray(primitiveType, size)));
+      JBlock _ifList = body._if(list.ne(JExpr._null()))._then();
+      JVar index = _ifList.decl(codeModel.INT, "i", JExpr.lit(0));
+      JForEach _forEach = _ifList.forEach(elementClass, "element", list);
+      _forEach.body().assign(result.component(index.incr()), _forEach.var());
+      body._if(buffered.gt(JExpr.lit(0)))._then().staticInvoke(codeModel.ref(System.class), "arraycopy").arg(JExpr._this().ref(bufferField)).arg(
+         JExpr.lit(0)).arg(result).arg(listSize).arg(buffered);
+      body._return(result);
+   }
+
+   /**
+    * <p>
+    * Generates the off-heap store of a list of fixed-width elements (see
+    * {@link #getCursorClass(JClass, Outline)}): the
+    * <code>withNew&lt;property&gt;()</code> records are appended to a direct
+    * {@link ByteBuffer}, and only copied into new elements of the JAXB list by
+    * the getter, or before marshalling (see
+    * {@link #getFlushMethod(JDefinedClass)}). The other lists are left
+    * unchanged, as are all the lists with the {@value #CONCURRENT_OPTION}
+    * option. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * private transient ByteBuffer readingStore;
+    * private transient int readingStoreSize;
+    * private transient Reading.FluentCursor readingCursor;
+    * 
+    * //...
+    * public List&lt;Reading&gt; getReading() {
+    *    if (reading == null) {
+    *       reading = new ArrayList&lt;Reading&gt;();
+    *    }
+    *    if (this.readingStoreSize &gt; 0) {
+    *       List&lt;Reading&gt; list = this.reading;
+    *       ByteBuffer store = this.readingStore;
+    *       int size = this.readingStoreSize;
+    *       this.readingStore = null;
+    *       this.readingStoreSize = 0;
+    *       if (list instanceof ArrayList) {
+    *          ((ArrayList&lt;Reading&gt;) list).ensureCapacity(list.size() + size);
+    *       }
+    *       //...
+    *       Reading.FluentCursor cursor = new Reading.FluentCursor();
+    *       for (int i = 0; (i &lt; size); i++) {
+    *          cursor.fluentPosition(store, i * Reading.FluentCursor.RECORD_SIZE);
+    *          Reading value = new Reading();
+    *          cursor.fluentCopyTo(value);
+    *          list.add(value);
+    *       }
+    *    }
+    *    return this.reading;
+    * }
+    * //...
+    * </pre>
+    * @param fieldOutline - the field outline of the managed list.
+    * @param outline - the outline.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   protected void createOffHeapStore(FieldOutline fieldOutline, Outline outline) throws SAXException {
+      final JDefinedClass cursorClass = getCursorClass(getElementClass(fieldOutline), outline);
+      if (cursorClass == null) {
+         return;
+      }
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+
+      JFieldVar storeField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, ByteBuffer.class, fieldName + "Store");
+      JFieldVar sizeField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.INT, fieldName + "StoreSize");
+      implClass.field(JMod.PRIVATE | JMod.TRANSIENT, cursorClass, fieldName + "Cursor");
+      offHeapStores.put(fieldOutline, storeField);
+      JFieldRef stored = JExpr._this().ref(sizeField);
+
+      // Getter: copies the records into new elements.
+      JBlock merge = createGetterHook(fieldOutline, stored.gt(JExpr.lit(0)));
+      JVar list = merge.decl(fieldOutline.getRawType(), "list", JExpr.refthis(fieldName));
+      JVar store = merge.decl(storeField.type(), "store", JExpr._this().ref(storeField));
+      JVar size = merge.decl(codeModel.INT, "size", stored);
+      merge.assign(JExpr._this().ref(storeField), JExpr._null());
+      merge.assign(stored, JExpr.lit(0));
+      createEnsureCapacity(merge, fieldOutline, list, list.invoke("size").plus(size), elementClass);
+      JVar cursor = merge.decl(cursorClass, "cursor", JExpr._new(cursorClass));
+      JForLoop _for = merge._for();
+      JVar i = _for.init(codeModel.INT, "i", JExpr.lit(0));
+      _for.test(i.lt(size));
+      _for.update(i.incr());
+      _for.body().invoke(cursor, "fluentPosition").arg(store).arg(i.mul(cursorClass.staticRef("RECORD_SIZE")));
+      JVar value = _for.body().decl(elementClass, "value", createNewInstance(elementClass));
+      _for.body().invoke(cursor, "fluentCopyTo").arg(value);
+      _for.body().invoke(list, "add").arg(value);
+
+      // Flush: reading the list is enough.
+      getFlushMethod(implClass).body()._if(stored.gt(JExpr.lit(0)))._then().invoke("get" + propertyName);
+   }
+
+   /**
+    * <p>
+    * Generates the <code>withNew&lt;property&gt;()</code> method of a list
+    * backed by an off-heap store, see
+    * {@link #createOffHeapStore(FieldOutline, Outline)}. The method returns
+    * the cursor of the list, positioned on a new zeroed record: the cursor is
+    * reused by the next call, and must not be used anymore once the list is
+    * read. The store doubles its capacity when it is full; a store which
+    * cannot grow anymore is first copied into the list. The generated code
+    * looks like:
+    * 
+    * <pre>
+    * //...
+    * public Reading withNewReading() {
+    *    ByteBuffer store = this.readingStore;
+    *    int size = this.readingStoreSize;
+    *    if ((store != null) &amp;&amp; (size == (store.capacity() / Reading.FluentCursor.RECORD_SIZE))) {
+    *       int capacity = (size + Math.min(size, ((Integer.MAX_VALUE / Reading.FluentCursor.RECORD_SIZE) - size)));
+    *       if (capacity &gt; size) {
+    *          ByteBuffer used = store.duplicate();
+    *          used.clear();
+    *          store = ByteBuffer.allocateDirect((capacity * Reading.FluentCursor.RECORD_SIZE)).order(ByteOrder.nativeOrder());
+    *          store.put(used);
+    *       } else {
+    *          this.getReading();
+    *          store = null;
+    *          size = 0;
+    *       }
+    *    }
+    *    if (store == null) {
+    *       store = ByteBuffer.allocateDirect((16 * Reading.FluentCursor.RECORD_SIZE)).order(ByteOrder.nativeOrder());
+    *    }
+    *    this.readingStore = store;
+    *    this.readingStoreSize = (size + 1);
+    *    Reading.FluentCursor cursor = this.readingCursor;
+    *    if (cursor == null) {
+    *       cursor = new Reading.FluentCursor();
+    *       this.readingCursor = cursor;
+    *    }
+    *    cursor.fluentPosition(store, (size * Reading.FluentCursor.RECORD_SIZE));
+    *    return cursor;
+    * }
+    * //...
+    * </pre>
+    * @param fieldOutline - the field outline of the managed list.
+    */
+   protected void createOffHeapWithNewMethod(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+      final JFieldVar storeField = offHeapStores.get(fieldOutline);
+      final JFieldVar cursorField = implClass.fields().get(fieldName + "Cursor");
+      final JClass cursorClass = (JClass) cursorField.type();
+      final JExpression recordSize = cursorClass.staticRef("RECORD_SIZE");
+      final JClass bufferClass = codeModel.ref(ByteBuffer.class);
+      final JExpression nativeOrder = codeModel.ref(ByteOrder.class).staticInvoke("nativeOrder");
+
+      JMethod method = createMutatorMethod(implClass, elementClass, "withNew" + propertyName);
+      JBlock body = method.body();
+
+      JVar store = body.decl(bufferClass, "store", JExpr._this().ref(storeField));
+      JVar size = body.decl(codeModel.INT, "size", JExpr.refthis(fieldName + "StoreSize"));
+      JBlock _ifFull = body._if(store.ne(JExpr._null()).cand(size.eq(store.invoke("capacity").div(recordSize))))
+         ._then();
+      JVar capacity = _ifFull.decl(codeModel.INT, "capacity", size.plus(codeModel.ref(Math.class).staticInvoke("min")
+         .arg(size).arg(codeModel.ref(Integer.class).staticRef("MAX_VALUE").div(recordSize).minus(size))));
+      JConditional _ifGrow = _ifFull._if(capacity.gt(size));
+      JBlock grow = _ifGrow._then();
+      JVar used = grow.decl(bufferClass, "used", store.invoke("duplicate"));
+      grow.invoke(used, "clear");
+      grow.assign(store, bufferClass.staticInvoke("allocateDirect").arg(capacity.mul(recordSize)).invoke("order").arg(
+         nativeOrder));
+      grow.invoke(store, "put").arg(used);
+      // The store cannot grow anymore: its records are moved into the list.
+      _ifGrow._else().invoke(JExpr._this(), "get" + propertyName);
+      _ifGrow._else().assign(store, JExpr._null());
+      _ifGrow._else().assign(size, JExpr.lit(0));
+      body._if(store.eq(JExpr._null()))._then().assign(store, bufferClass.staticInvoke("allocateDirect").arg(
+         JExpr.lit(OFF_HEAP_CAPACITY).mul(recordSize)).invoke("order").arg(nativeOrder));
+      body.assign(JExpr._this().ref(storeField), store);
+      body.assign(JExpr.refthis(fieldName + "StoreSize"), size.plus(JExpr.lit(1)));
+
+      JVar cursor = body.decl(cursorClass, "cursor", JExpr._this().ref(cursorField));
+      JBlock _ifNoCursor = body._if(cursor.eq(JExpr._null()))._then();
+      _ifNoCursor.assign(cursor, JExpr._new(cursorClass));
+      _ifNoCursor.assign(JExpr._this().ref(cursorField), cursor);
+      body.invoke(cursor, "fluentPosition").arg(store).arg(size.mul(recordSize));
+      body._return(cursor);
+   }
+
+   /**
+    * Returns the cursor class of an element class, created on first use by
+    * {@link #createCursorClass(ClassOutline)}.
+    * @param elementClass - the element class.
+    * @param outline - the outline.
+    * @return the cursor class, or null if the element class is not a
+    *         concrete generated class with only fixed-width fields.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private JDefinedClass getCursorClass(JClass elementClass, Outline outline) throws SAXException {
+      if (cursorClasses.containsKey(elementClass)) {
+         return cursorClasses.get(elementClass);
+      }
+      JDefinedClass cursorClass = null;
+      for (ClassOutline classOutline : outline.getClasses()) {
+         if (classOutline.implClass == elementClass) {
+            cursorClass = createCursorClass(classOutline);
+            break;
+         }
+      }
+      cursorClasses.put(elementClass, cursorClass);
+      return cursorClass;
+   }
+
+   /**
+    * <p>
+    * Generates the cursor class of a class whose fields are all primitives or
+    * primitive wrappers, read and written through their JAXB getter and
+    * setter. The cursor is a flyweight over a record of an off-heap store
+    * (see {@link #createOffHeapStore(FieldOutline, Outline)}): its accessors
+    * read and write the record, the null wrappers being flagged in the first
+    * bytes of the record. <code>fluentCopyTo()</code>, which overrides the
+    * copy method of the class with the {@value #COPY_OPTION} option, copies
+    * the record into a real instance. The generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public static final class FluentCursor extends Reading {
+    *    public static final int RECORD_SIZE = 24;
+    *    private transient ByteBuffer buffer;
+    *    private transient int offset;
+    * 
+    *    public void fluentPosition(ByteBuffer buffer, int offset) {
+    *       this.buffer = buffer;
+    *       this.offset = offset;
+    *    }
+    * 
+    *    public long getTime() {
+    *       return this.buffer.getLong(this.offset + 1);
+    *    }
+    * 
+    *    public void setTime(long value) {
+    *       this.buffer.putLong(this.offset + 1, value);
+    *    }
+    * 
+    *    public Short getQuality() {
+    *       if ((this.buffer.get(this.offset) &amp; 1) == 0) {
+    *          return null;
+    *       }
+    *       return this.buffer.getShort(this.offset + 9);
+    *    }
+    *    //...
+    *    protected void fluentCopyTo(Reading copy) {
+    *       copy.setTime(this.getTime());
+    *       //...
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * A class already defining a <code>FluentCursor</code> class is reported
+    * as a warning, and its lists are kept on the heap.
+    * @param classOutline - the class outline of the element class.
+    * @return the cursor class, or null if the class is not eligible.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   private JDefinedClass createCursorClass(ClassOutline classOutline) throws SAXException {
+      final JDefinedClass implClass = classOutline.implClass;
+      final JCodeModel codeModel = implClass.owner();
+      final FieldOutline[] fieldOutlines = classOutline.getDeclaredFields();
+      if (classOutline.getSuperClass() != null || implClass.isAbstract() || fieldOutlines.length == 0) {
+         return null;
+      }
+      final JMethod[] getters = new JMethod[fieldOutlines.length];
+      final JMethod[] setters = new JMethod[fieldOutlines.length];
+      int nullables = 0;
+      for (int i = 0; i < fieldOutlines.length; i++) {
+         final String propertyName = fieldOutlines[i].getPropertyInfo().getName(true);
+         final JType rawType = fieldOutlines[i].getRawType();
+         if (!rawType.unboxify().isPrimitive()) {
+            return null;
+         }
+         getters[i] = implClass.getMethod("get" + propertyName, new JType[0]);
+         if (getters[i] == null) {
+            getters[i] = implClass.getMethod("is" + propertyName, new JType[0]);
+         }
+         setters[i] = implClass.getMethod("set" + propertyName, new JType[] { rawType });
+         if (getters[i] == null || setters[i] == null || !getters[i].type().fullName().equals(rawType.fullName())) {
+            return null;
+         }
+         if (!rawType.isPrimitive()) {
+            nullables++;
+         }
+      }
+
+      JDefinedClass cursorClass;
+      try {
+         cursorClass = implClass._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, "FluentCursor");
+      } catch (JClassAlreadyExistsException e) {
+         errorHandler.warning(new SAXParseException(implClass.fullName()
+            + " already defines FluentCursor: its lists are kept on the heap", classOutline.target.getLocator()));
+         return null;
+      }
+      cursorClass._extends(implClass);
+      JFieldVar recordSize = cursorClass.field(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, codeModel.INT, "RECORD_SIZE");
+      JFieldVar bufferField = cursorClass.field(JMod.PRIVATE | JMod.TRANSIENT, ByteBuffer.class, "buffer");
+      JFieldVar offsetField = cursorClass.field(JMod.PRIVATE | JMod.TRANSIENT, codeModel.INT, "offset");
+      JFieldRef buffer = JExpr._this().ref(bufferField);
+      JFieldRef offset = JExpr._this().ref(offsetField);
+
+      JMethod move = cursorClass.method(JMod.PUBLIC, codeModel.VOID, "fluentPosition");
+      move.body().assign(buffer, move.param(ByteBuffer.class, "buffer"));
+      move.body().assign(offset, move.param(codeModel.INT, "offset"));
+
+      // The null flags of the wrappers come first, then the values.
+      int size = (nullables + 7) / 8;
+      int nullable = 0;
+      for (int i = 0; i < fieldOutlines.length; i++) {
+         final JType rawType = fieldOutlines[i].getRawType();
+         final JPrimitiveType primitiveType = (JPrimitiveType) rawType.unboxify();
+         final int width = getRecordWidth(primitiveType);
+         final String suffix = width == 1 ? "" : primitiveType.name().substring(0, 1).toUpperCase()
+            + primitiveType.name().substring(1);
+         final JExpression at = size == 0 ? offset : offset.plus(JExpr.lit(size));
+         JExpression read = buffer.invoke("get" + suffix).arg(at);
+         if (primitiveType == codeModel.BOOLEAN) {
+            read = read.ne(JExpr.lit(0));
+         }
+
+         JMethod getter = cursorClass.method(JMod.PUBLIC, rawType, getters[i].name());
+         JMethod setter = cursorClass.method(JMod.PUBLIC, codeModel.VOID, setters[i].name());
+         JVar value = setter.param(rawType, "value");
+         JExpression written = primitiveType == codeModel.BOOLEAN ? JExpr.cast(codeModel.BYTE, JOp.cond(value, JExpr
+            .lit(1), JExpr.lit(0))) : value;
+         JBlock write = setter.body();
+         if (!rawType.isPrimitive()) {
+            final JExpression flagsAt = nullable / 8 == 0 ? offset : offset.plus(JExpr.lit(nullable / 8));
+            final int mask = 1 << (nullable % 8);
+            nullable++;
+            getter.body()._if(JOp.band(buffer.invoke("get").arg(flagsAt), JExpr.lit(mask)).eq(JExpr.lit(0)))._then()
+               ._return(JExpr._null());
+            JVar flags = write.decl(codeModel.BYTE, "flags", buffer.invoke("get").arg(flagsAt));
+            JConditional _ifNull = write._if(value.eq(JExpr._null()));
+            _ifNull._then().invoke(buffer, "put").arg(flagsAt).arg(
+               JExpr.cast(codeModel.BYTE, JOp.band(flags, JExpr.lit(~mask))));
+            write = _ifNull._else();
+            write.invoke(buffer, "put").arg(flagsAt).arg(JExpr.cast(codeModel.BYTE, JOp.bor(flags, JExpr.lit(mask))));
+         }
+         getter.body()._return(read);
+         write.invoke(buffer, "put" + suffix).arg(at).arg(written);
+         size += width;
+      }
+      recordSize.init(JExpr.lit(size));
+
+      // Copies the record rather than the fields.
+      JMethod copyTo = cursorClass.method(JMod.PROTECTED, codeModel.VOID, "fluentCopyTo");
+      JVar copy = copyTo.param(implClass, "copy");
+      if (fork) {
+         JMethod forkTo = cursorClass.method(JMod.PROTECTED, codeModel.VOID, "fluentForkTo");
+         forkTo.body().invoke(JExpr._this(), copyTo).arg(forkTo.param(implClass, "fork"));
+      }
+      for (int i = 0; i < fieldOutlines.length; i++) {
+         copyTo.body().invoke(copy, setters[i].name()).arg(JExpr._this().invoke(getters[i].name()));
+      }
+
+      if (reset) {
+         // Resets the record rather than the fields.
+         JMethod clear = cursorClass.method(JMod.PUBLIC, codeModel.VOID, "fluentReset");
+         JForLoop _for = clear.body()._for();
+         JVar i = _for.init(codeModel.INT, "i", JExpr.lit(0));
+         _for.test(i.lt(recordSize));
+         _for.update(i.incr());
+         _for.body().invoke(buffer, "put").arg(offset.plus(i)).arg(JExpr.cast(codeModel.BYTE, JExpr.lit(0)));
+      }
+      if (compact) {
+         // Reads the record rather than the fields.
+         JExpression empty = JExpr.TRUE;
+         for (int j = 0; j < fieldOutlines.length; j++) {
+            if (fieldOutlines[j].getRawType().isPrimitive()) {
+               empty = JExpr.FALSE;
+               break;
+            }
+            empty = empty.cand(JExpr._this().invoke(getters[j].name()).eq(JExpr._null()));
+         }
+         cursorClass.method(JMod.PUBLIC, codeModel.BOOLEAN, "fluentIsEmpty").body()._return(empty);
+      }
+      if (pool && isManagedClass(implClass)) {
+         // The cursor is owned by its list.
+         cursorClass.method(JMod.PUBLIC, codeModel.VOID, "fluentRecycle").body()._throw(
+            JExpr._new(codeModel.ref(UnsupportedOperationException.class)).arg(
+               implClass.name() + ".FluentCursor cannot be recycled"));
+      }
+      return cursorClass;
+   }
+
+   /**
+    * Returns the width of a primitive value in an off-heap record.
+    * @param primitiveType - the primitive type.
+    * @return the width, in bytes.
+    */
+   private static int getRecordWidth(JPrimitiveType primitiveType) {
+      final JCodeModel codeModel = primitiveType.owner();
+      if (primitiveType == codeModel.BOOLEAN || primitiveType == codeModel.BYTE) {
+         return 1;
+      }
+      if (primitiveType == codeModel.SHORT || primitiveType == codeModel.CHAR) {
+         return 2;
+      }
+      if (primitiveType == codeModel.INT || primitiveType == codeModel.FLOAT) {
+         return 4;
+      }
+      return 8;
+   }
+
+   /**
+    * <p>
+    * Generates the factory of the unmarshaller listener of a managed list.
+    * The listener hands each element of the list to the handler as soon as
+    * the element is unmarshalled; the element is removed from the list if
+    * the handler does not keep it, so the memory used by the list stays
+    * bounded. JAXB adds the element to the list after the listener call, so
+    * a dropped element is removed on the next event of its parent. The
+    * generated code looks like:
+    * 
+    * <pre>
+    * //...
+    * public interface ItemHandler {
+    *    boolean handle(PropertyClass value);
+    * }
+    * 
+    * //...
+    * public static Unmarshaller.Listener createItemListener(ItemHandler handler, Unmarshaller.Listener next) {
+    *    return new ItemListener(handler, next);
+    * }
+    * 
+    * private static final class ItemListener extends Unmarshaller.Listener {
+    *    private final ItemHandler handler;
+    *    private final Unmarshaller.Listener next;
+    *    private ShipOrder droppedParent;
+    *    private PropertyClass dropped;
+    * 
+    *    ItemListener(ItemHandler handler, Unmarshaller.Listener next) {
+    *       this.handler = handler;
+    *       this.next = next;
+    *    }
+    * 
+    *    public void beforeUnmarshal(Object target, Object parent) {
+    *       if (this.next != null) {
+    *          this.next.beforeUnmarshal(target, parent);
+    *       }
+    *    }
+    * 
+    *    public void afterUnmarshal(Object target, Object parent) {
+    *       if ((this.dropped != null) &amp;&amp; ((target == this.droppedParent) || (parent == this.droppedParent))) {
+    *          List&lt;PropertyClass&gt; list = this.droppedParent.item;
+    *          int last = list.size() - 1;
+    *          if ((last &gt;= 0) &amp;&amp; (list.get(last) == this.dropped)) {
+    *             list.remove(last);
+    *          } else {
+    *             list.remove(this.dropped);
+    *          }
+    *          this.dropped = null;
+    *          this.droppedParent = null;
+    *       }
+    *       if ((target instanceof PropertyClass) &amp;&amp; (parent instanceof ShipOrder)
+    *          &amp;&amp; (!this.handler.handle((PropertyClass) target))) {
+    *          this.dropped = (PropertyClass) target;
+    *          this.droppedParent = (ShipOrder) parent;
+    *       }
+    *       if (this.next != null) {
+    *          this.next.afterUnmarshal(target, parent);
+    *       }
+    *    }
+    * }
+    * //...
+    * </pre>
+    * <p>
+    * The <code>next</code> listener, which may be null, chains the listeners of
+    * several lists on the single listener of the unmarshaller.
+    * <p>
+    * A class already defining the handler interface or the listener class is
+    * reported as an error, and the list gets no listener.
+    * @param fieldOutline - the field outline of the managed list.
+    * @throws SAXException if the error handler aborts the generation.
+    */
+   protected void createListListenerMethod(FieldOutline fieldOutline) throws SAXException {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+      final JClass listenerClass = codeModel.ref(Unmarshaller.Listener.class);
+
+      // Both names are checked first, so that a clash leaves no half of them.
+      for (Iterator<JDefinedClass> it = implClass.classes(); it.hasNext();) {
+         final String name = it.next().name();
+         if (name.equals(propertyName + "Handler") || name.equals(propertyName + "Listener")) {
+            errorHandler.error(new SAXParseException(implClass.fullName() + " already defines " + name
+               + ": the listener of " + propertyName + " is not generated", fieldOutline.getPropertyInfo()
+               .getLocator()));
+            return;
+         }
+      }
+      JDefinedClass handlerInterface;
+      try {
+         handlerInterface = implClass._interface(JMod.PUBLIC, propertyName + "Handler");
+      } catch (JClassAlreadyExistsException e) {
+         throw new IllegalStateException(e);
+      }
+      JMethod handle = handlerInterface.method(JMod.NONE, codeModel.BOOLEAN, "handle");
+      handle.param(elementClass, "value");
+
+      // A named class: codemodel 2.2.3 fails on anonymous classes when it
+      // collects the imports of the file.
+      JDefinedClass listener;
+      try {
+         listener = implClass._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, propertyName + "Listener");
+      } catch (JClassAlreadyExistsException e) {
+         throw new IllegalStateException(e);
+      }
+      listener._extends(listenerClass);
+      JFieldVar handler = listener.field(JMod.PRIVATE | JMod.FINAL, handlerInterface, "handler");
+      JFieldVar next = listener.field(JMod.PRIVATE | JMod.FINAL, listenerClass, "next");
+      JFieldVar droppedParent = listener.field(JMod.PRIVATE, implClass, "droppedParent");
+      JFieldVar dropped = listener.field(JMod.PRIVATE, elementClass, "dropped");
+      JMethod constructor = listener.constructor(JMod.NONE);
+      constructor.body().assign(JExpr._this().ref(handler), constructor.param(handlerInterface, "handler"));
+      constructor.body().assign(JExpr._this().ref(next), constructor.param(listenerClass, "next"));
+
+      JMethod before = listener.method(JMod.PUBLIC, codeModel.VOID, "beforeUnmarshal");
+      JVar beforeTarget = before.param(Object.class, "target");
+      JVar beforeParent = before.param(Object.class, "parent");
+      before.body()._if(JExpr._this().ref(next).ne(JExpr._null()))._then().invoke(JExpr._this().ref(next),
+         "beforeUnmarshal").arg(beforeTarget).arg(beforeParent);
+
+      JMethod after = listener.method(JMod.PUBLIC, codeModel.VOID, "afterUnmarshal");
+      JVar target = after.param(Object.class, "target");
+      JVar parent = after.param(Object.class, "parent");
+      JBlock _ifDropped = after.body()._if(
+         JExpr._this().ref(dropped).ne(JExpr._null()).cand(
+            target.eq(JExpr._this().ref(droppedParent)).cor(parent.eq(JExpr._this().ref(droppedParent)))))._then();
+      JVar list = _ifDropped.decl(fieldOutline.getRawType(), "list", JExpr._this().ref(droppedParent).ref(fieldName));
+      JVar last = _ifDropped.decl(codeModel.INT, "last", list.invoke("size").minus(JExpr.lit(1)));
+      JConditional _ifLast = _ifDropped._if(last.gte(JExpr.lit(0)).cand(
+         list.invoke("get").arg(last).eq(JExpr._this().ref(dropped))));
+      _ifLast._then().invoke(list, "remove").arg(last);
+      _ifLast._else().invoke(list, "remove").arg(JExpr._this().ref(dropped));
+      _ifDropped.assign(JExpr._this().ref(dropped), JExpr._null());
+      _ifDropped.assign(JExpr._this().ref(droppedParent), JExpr._null());
+      JBlock _ifNotKept = after.body()._if(
+         target._instanceof(elementClass).cand(parent._instanceof(implClass)).cand(
+            JExpr._this().ref(handler).invoke(handle).arg(JExpr.cast(elementClass, target)).not()))._then();
+      _ifNotKept.assign(JExpr._this().ref(dropped), JExpr.cast(elementClass, target));
+      _ifNotKept.assign(JExpr._this().ref(droppedParent), JExpr.cast(implClass, parent));
+      after.body()._if(JExpr._this().ref(next).ne(JExpr._null()))._then().invoke(JExpr._this().ref(next),
+         "afterUnmarshal").arg(target).arg(parent);
+
+      JMethod method = implClass.method(JMod.PUBLIC | JMod.STATIC, listenerClass, "create" + propertyName + "Listener");
+      method.body()._return(JExpr._new(listener).arg(method.param(handlerInterface, "handler")).arg(
+         method.param(listenerClass, "next")));
+   }
+
+   /**
+    * <p>
+    * Returns the accessor of the pending queue of a managed list for the
+    * current thread, generating the queues on first use. The pending values
+    * are striped over one lock-free queue per stripe, the stripe of a thread
+    * being picked by its id, so concurrent producers neither contend on the
+    * monitor of the list nor on the tail of a single queue. The number of
+    * stripes is the number of available processors, rounded up to a power of
+    * two. The getter, and so <code>fluentFlush()</code>, moves the pending
+    * values into the list stripe by stripe: the values appended by one thread
+    * keep their append order, the values of concurrent threads are grouped by
+    * stripe. The stripes are only allocated by the first append, and each
+    * queue by the first append to its stripe. The first read of the list
+    * creates it under the lock of the merge, then publishes it through a
+    * volatile flag, like {@link #createThreadSafeWithMethod(FieldOutline)}:
+    * the unsynchronized lazy initialization of the getter cannot replace a
+    * list which already received pending values. The other getter hooks, like
+    * the sparse values, still run before the merge. The generated code looks
+    * like:
+    * 
+    * <pre>
+    * //...
+    * private static final int FLUENT_STRIPES = Integer.highestOneBit((Runtime.getRuntime().availableProcessors() * 2) - 1);
+    * private transient volatile AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt; itemPending;
+    * private transient volatile boolean itemPublished;
+    * 
+    * //...
+    * public List&lt;PropertyClass&gt; getItem() {
+    *    if (!this.itemPublished) {
+    *       fluentPublishItem();
+    *    }
+    *    if (item == null) {
+    *       item = new ArrayList&lt;PropertyClass&gt;();
+    *    }
+    *    if (this.fluentHasPendingItem()) {
+    *       fluentMergeItem();
+    *    }
+    *    return this.item;
+    * }
+    * 
+    * private ConcurrentLinkedQueue&lt;PropertyClass&gt; fluentPendingItem() {
+    *    AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt; stripes = this.itemPending;
+    *    if (stripes == null) {
+    *       stripes = this.fluentStripesItem();
+    *    }
+    *    int stripe = (((int) Thread.currentThread().getId()) &amp; (FLUENT_STRIPES - 1));
+    *    ConcurrentLinkedQueue&lt;PropertyClass&gt; pending = stripes.get(stripe);
+    *    if (pending == null) {
+    *       stripes.compareAndSet(stripe, null, new ConcurrentLinkedQueue&lt;PropertyClass&gt;());
+    *       pending = stripes.get(stripe);
+    *    }
+    *    return pending;
+    * }
+    * 
+    * private synchronized AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt; fluentStripesItem() {
+    *    if (this.itemPending == null) {
+    *       this.itemPending = new AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt;(FLUENT_STRIPES);
+    *    }
+    *    return this.itemPending;
+    * }
+    * 
+    * private boolean fluentHasPendingItem() {
+    *    AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt; stripes = this.itemPending;
+    *    if (stripes != null) {
+    *       for (int i = 0; (i &lt; stripes.length()); i++) {
+    *          ConcurrentLinkedQueue&lt;PropertyClass&gt; pending = stripes.get(i);
+    *          if ((pending != null) &amp;&amp; (!pending.isEmpty())) {
+    *             return true;
+    *          }
+    *       }
+    *    }
+    *    return false;
+    * }
+    * 
+    * private synchronized void fluentPublishItem() {
+    *    if (this.item == null) {
+    *       this.item = new ArrayList&lt;PropertyClass&gt;();
+    *    }
+    *    this.itemPublished = true;
+    * }
+    * 
+    * private synchronized void fluentMergeItem() {
+    *    AtomicReferenceArray&lt;ConcurrentLinkedQueue&lt;PropertyClass&gt;&gt; stripes = this.itemPending;
+    *    for (int i = 0; (i &lt; stripes.length()); i++) {
+    *       ConcurrentLinkedQueue&lt;PropertyClass&gt; pending = stripes.get(i);
+    *       if (pending != null) {
+    *          for (PropertyClass value = pending.poll(); (value != null); value = pending.poll()) {
+    *             this.item.add(value);
+    *          }
+    *       }
+    *    }
+    * }
+    * //...
+    * </pre>
+    * @param fieldOutline - the field outline of the managed list.
+    * @return the accessor of the pending queue.
+    */
+   private JMethod getPendingQueue(FieldOutline fieldOutline) {
+      final JDefinedClass implClass = fieldOutline.parent().implClass;
+      final String fieldName = fieldOutline.getPropertyInfo().getName(false);
+      final String propertyName = fieldOutline.getPropertyInfo().getName(true);
+      final JClass elementClass = getElementClass(fieldOutline);
+      final JCodeModel codeModel = implClass.owner();
+
+      JMethod accessor = implClass.getMethod("fluentPending" + propertyName, new JType[0]);
+      if (accessor != null) {
+         return accessor;
+      }
+      JFieldVar stripeCount = implClass.fields().get("FLUENT_STRIPES");
+      if (stripeCount == null) {
+         stripeCount = implClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, codeModel.INT, "FLUENT_STRIPES",
+            codeModel.ref(Integer.class).staticInvoke("highestOneBit").arg(
+               codeModel.ref(Runtime.class).staticInvoke("getRuntime").invoke("availableProcessors").mul(JExpr.lit(2))
+                  .minus(JExpr.lit(1))));
+      }
+      JClass queueClass = codeModel.ref(ConcurrentLinkedQueue.class).narrow(elementClass);
+      JClass stripesClass = codeModel.ref(AtomicReferenceArray.class).narrow(queueClass);
+      JFieldVar pendingField = implClass.field(JMod.PRIVATE | JMod.TRANSIENT | JMod.VOLATILE, stripesClass, fieldName
+         + "Pending");
+      JFieldVar published = implClass.field(JMod.PRIVATE | JMod.TRANSIENT | JMod.VOLATILE, codeModel.BOOLEAN,
+         fieldName + "Published");
+
+      JMethod create = implClass.method(JMod.PRIVATE | JMod.SYNCHRONIZED, stripesClass, "fluentStripes" + propertyName);
+      create.body()._if(JExpr._this().ref(pendingField).eq(JExpr._null()))._then().assign(
+         JExpr._this().ref(pendingField), JExpr._new(stripesClass).arg(stripeCount));
+      create.body()._return(JExpr._this().ref(pendingField));
+
+      accessor = implClass.method(JMod.PRIVATE, queueClass, "fluentPending" + propertyName);
+      JBlock body = accessor.body();
+      JVar stripes = body.decl(stripesClass, "stripes", JExpr._this().ref(pendingField));
+      body._if(stripes.eq(JExpr._null()))._then().assign(stripes, JExpr._this().invoke(create));
+      JVar stripe = body.decl(codeModel.INT, "stripe", JOp.band(JExpr.cast(codeModel.INT, codeModel.ref(Thread.class)
+         .staticInvoke("currentThread").invoke("getId")), stripeCount.minus(JExpr.lit(1))));
+      JVar pending = body.decl(queueClass, "pending", stripes.invoke("get").arg(stripe));
+      JBlock _ifNoQueue = body._if(pending.eq(JExpr._null()))._then();
+      _ifNoQueue.invoke(stripes, "compareAndSet").arg(stripe).arg(JExpr._null()).arg(JExpr._new(queueClass));
+      _ifNoQueue.assign(pending, stripes.invoke("get").arg(stripe));
+      body._return(pending);
+
+      JMethod hasPending = implClass.method(JMod.PRIVATE, codeModel.BOOLEAN, "fluentHasPending" + propertyName);
+      JVar checked = hasPending.body().decl(stripesClass, "stripes", JExpr._this().ref(pendingField));
+      JForLoop _forChecked = hasPending.body()._if(checked.ne(JExpr._null()))._then()._for();
+      JVar i = _forChecked.init(codeModel.INT, "i", JExpr.lit(0));
+      _forChecked.test(i.lt(checked.invoke("length")));
+      _forChecked.update(i.incr());
+      JVar checkedQueue = _forChecked.body().decl(queueClass, "pending", checked.invoke("get").arg(i));
+      _forChecked.body()._if(checkedQueue.ne(JExpr._null()).cand(checkedQueue.invoke("isEmpty").not()))._then()
+         ._return(JExpr.TRUE);
+      hasPending.body()._return(JExpr.FALSE);
+
+      JMethod publish = implClass.method(JMod.PRIVATE | JMod.SYNCHRONIZED, codeModel.VOID, "fluentPublish"
+         + propertyName);
+      JClass listClass = getListImplementation(fieldOutline);
+      publish.body()._if(JExpr.refthis(fieldName).eq(JExpr._null()))._then().assign(JExpr.refthis(fieldName),
+         JExpr._new(listClass != null ? listClass : codeModel.ref(ArrayList.class).narrow(elementClass)));
+      publish.body().assign(JExpr._this().ref(published), JExpr.TRUE);
+
+      // The stripes are merged in their order, each queue in its append order.
+      JMethod merge = implClass.method(JMod.PRIVATE | JMod.SYNCHRONIZED, codeModel.VOID, "fluentMerge" + propertyName);
+      JVar merged = merge.body().decl(stripesClass, "stripes", JExpr._this().ref(pendingField));
+      JForLoop _forStripes = merge.body()._for();
+      JVar j = _forStripes.init(codeModel.INT, "i", JExpr.lit(0));
+      _forStripes.test(j.lt(merged.invoke("length")));
+      _forStripes.update(j.incr());
+      JVar mergedQueue = _forStripes.body().decl(queueClass, "pending", merged.invoke("get").arg(j));
+      JForLoop _for = _forStripes.body()._if(mergedQueue.ne(JExpr._null()))._then()._for();
+      JVar value = _for.init(elementClass, "value", mergedQueue.invoke("poll"));
+      _for.test(value.ne(JExpr._null()));
+      _for.update(value.assign(mergedQueue.invoke("poll")));
+      _for.body().invoke(JExpr.refthis(fieldName), "add").arg(value);
+
+      // The list is created under the lock before the lazy initialization
+      // of the getter.
+      JBlock getter = implClass.getMethod("get" + propertyName, new JType[0]).body();
+      getter.pos(0);
+      getter._if(JExpr._this().ref(published).not())._then().invoke(publish);
+      getter.pos(getter.getContents().size());
+
+      createGetterHook(fieldOutline, hasPendingValues(fieldOutline)).invoke(merge);
+
+      // Flush: reading the list is enough.
+      getFlushMethod(implClass).body()._if(hasPendingValues(fieldOutline))._then().invoke("get" + propertyName);
+      return accessor;
+   }
+
+   /**
+    * Returns the condition telling whether values are waiting in the
+    * pending queues of a list, see {@link #getPendingQueue(FieldOutline)}.
+    * @param fieldOutline - the field outline of the managed list.
+    * @return the <code>this.fluentHasPendingItem()</code> condition.
+    */
+   private JExpression hasPendingValues(FieldOutline fieldOutline) {
+      return JExpr._this().invoke("fluentHasPending" + fieldOutline.getPropertyInfo().getName(true));
+   }
 }
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package redmosquito.xjc.plugin.fluent.ext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings and counts of a run of the plugin, written as a JSON report:
+ * 
+ * <pre>
+ * {
+ *   "totalNanos": 5231000,
+ *   "classes": 3,
+ *   "methods": 12,
+ *   "fields": { "MANAGED_FIELD": 1, "MANAGED_LIST": 1, "OTHER": 7 },
+ *   "phases": { "classification": { "calls": 1, "nanos": 812000 }, ... },
+ *   "slowestClasses": [ { "name": "generated.ShipOrder", "methods": 6, "nanos": 2101000 }, ... ]
+ * }
+ * </pre>
+ * <p>
+ * The phases are reported in the order they were first recorded.
+ * 
+ * @author Jrme Delagnes
+ */
+final class GenerationMetrics {
+
+   /** Maximum number of classes listed in the report. */
+   private static final int SLOWEST_CLASSES = 10;
+
+   /** Start time of the run. */
+   private final long start = System.nanoTime();
+
+   /** Number of calls of each phase. */
+   private final Map<String, Integer> phaseCalls = new LinkedHashMap<String, Integer>();
+
+   /** Time spent in each phase. */
+   private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+
+   /** Number of fields of each type. */
+   private final Map<String, Integer> fieldCounts = new LinkedHashMap<String, Integer>();
+
+   /** Cost of the generated classes. */
+   private final List<ClassCost> classCosts = new ArrayList<ClassCost>();
+
+   /** Total time of the run, set by {@link #stop()}. */
+   private long totalNanos;
+
+   /** Cost of a generated class. */
+   private static final class ClassCost {
+      /** The class name. */
+      private final String name;
+      /** Number of methods added to the class. */
+      private final int methods;
+      /** Time spent generating the methods of the class. */
+      private final long nanos;
+
+      /**
+       * Constructor.
+       * @param name - the class name.
+       * @param methods - the number of added methods.
+       * @param nanos - the generation time.
+       */
+      private ClassCost(String name, int methods, long nanos) {
+         this.name = name;
+         this.methods = methods;
+         this.nanos = nanos;
+      }
+   }
+
+   /**
+    * Adds the time elapsed since a start time to a phase.
+    * @param phase - the phase name.
+    * @param startNanos - the start time, from {@link System#nanoTime()}.
+    * @return the current time, to chain the next phase.
+    */
+   long record(String phase, long startNanos) {
+      long now = System.nanoTime();
+      Integer calls = phaseCalls.get(phase);
+      Long nanos = phaseNanos.get(phase);
+      phaseCalls.put(phase, calls == null ? 1 : calls + 1);
+      phaseNanos.put(phase, (nanos == null ? 0L : nanos) + now - startNanos);
+      return now;
+   }
+
+   /**
+    * Counts a field.
+    * @param fieldType - the name of the field type.
+    */
+   void countField(String fieldType) {
+      Integer count = fieldCounts.get(fieldType);
+      fieldCounts.put(fieldType, count == null ? 1 : count + 1);
+   }
+
+   /**
+    * Records the cost of a generated class.
+    * @param className - the class name.
+    * @param methods - the number of methods added to the class.
+    * @param startNanos - the start time of the class, from {@link System#nanoTime()}.
+    */
+   void recordClass(String className, int methods, long startNanos) {
+      classCosts.add(new ClassCost(className, methods, System.nanoTime() - startNanos));
+   }
+
+   /**
+    * Ends the run.
+    */
+   void stop() {
+      totalNanos = System.nanoTime() - start;
+   }
+
+   /**
+    * Writes the JSON report.
+    * @param file - the report file.
+    * @throws IOException if the file cannot be written.
+    */
+   void write(File file) throws IOException {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+         throw new IOException("Cannot create directory " + parent);
+      }
+      Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+         out.write(toJson());
+      } finally {
+         out.close();
+      }
+   }
+
+   /**
+    * Returns the JSON report.
+    * @return the report.
+    */
+   String toJson() {
+      int methods = 0;
+      for (ClassCost classCost : classCosts) {
+         methods += classCost.methods;
+      }
+      StringBuilder json = new StringBuilder("{\n");
+      json.append("  \"totalNanos\": ").append(totalNanos).append(",\n");
+      json.append("  \"classes\": ").append(classCosts.size()).append(",\n");
+      json.append("  \"methods\": ").append(methods).append(",\n");
+      json.append("  \"fields\": {");
+      String separator = " ";
+      for (Map.Entry<String, Integer> entry : fieldCounts.entrySet()) {
+         json.append(separator);
+         appendString(json, entry.getKey()).append(": ").append(entry.getValue());
+         separator = ", ";
+      }
+      json.append(" },\n");
+      json.append("  \"phases\": {");
+      separator = "\n    ";
+      for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+         json.append(separator);
+         appendString(json, entry.getKey()).append(": { \"calls\": ").append(phaseCalls.get(entry.getKey()))
+            .append(", \"nanos\": ").append(entry.getValue()).append(" }");
+         separator = ",\n    ";
+      }
+      json.append("\n  },\n");
+      json.append("  \"slowestClasses\": [");
+      List<ClassCost> slowest = new ArrayList<ClassCost>(classCosts);
+      Collections.sort(slowest, new Comparator<ClassCost>() {
+         public int compare(ClassCost c1, ClassCost c2) {
+            return c1.nanos < c2.nanos ? 1 : c1.nanos > c2.nanos ? -1 : 0;
+         }
+      });
+      separator = "\n    ";
+      for (ClassCost classCost : slowest.subList(0, Math.min(SLOWEST_CLASSES, slowest.size()))) {
+         json.append(separator).append("{ \"name\": ");
+         appendString(json, classCost.name).append(", \"methods\": ").append(classCost.methods)
+            .append(", \"nanos\": ").append(classCost.nanos).append(" }");
+         separator = ",\n    ";
+      }
+      json.append("\n  ]\n}\n");
+      return json.toString();
+   }
+
+   /**
+    * Appends a JSON string.
+    * @param json - the JSON buffer.
+    * @param value - the string value.
+    * @return the JSON buffer.
+    */
+   private static StringBuilder appendString(StringBuilder json, String value) {
+      json.append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         if (c == '"' || c == '\\') {
+            json.append('\\').append(c);
+         } else if (c < ' ') {
+            json.append(String.format("\\u%04x", (int) c));
+         } else {
+            json.append(c);
+         }
+      }
+      return json.append('"');
+   }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package redmosquito.xjc.plugin.fluent.ext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the hits and misses of {@link FingerprintIndex} from one run to the
+ * next.
+ * 
+ * @author Jrme Delagnes
+ */
+public class FingerprintIndexTest {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private File file;
+
+   private FingerprintIndex load() throws IOException {
+      if (file == null) {
+         file = new File(folder.getRoot(), "index/fluent.index");
+      }
+      return FingerprintIndex.load(file);
+   }
+
+   @Test
+   public void unknownClassIsAMiss() throws IOException {
+      FingerprintIndex index = load();
+      assertNull(index.get("generated.ShipOrder", index.fingerprint("ShipOrder")));
+      assertFalse(file.exists());
+   }
+
+   @Test
+   public void unchangedClassIsAHit() throws IOException {
+      FingerprintIndex index = load();
+      String fingerprint = index.fingerprint("ShipOrder");
+      index.put("generated.ShipOrder", fingerprint, new String[] { "OTHER", "MANAGED_LIST" });
+      index.put("generated.Empty", index.fingerprint("Empty"), new String[0]);
+      assertTrue(index.store());
+
+      FingerprintIndex next = load();
+      assertEquals(fingerprint, next.fingerprint("ShipOrder"));
+      assertArrayEquals(new String[] { "OTHER", "MANAGED_LIST" }, next.get("generated.ShipOrder", fingerprint));
+      assertArrayEquals(new String[0], next.get("generated.Empty", next.fingerprint("Empty")));
+   }
+
+   @Test
+   public void changedClassIsAMiss() throws IOException {
+      FingerprintIndex index = load();
+      index.put("generated.ShipOrder", index.fingerprint("ShipOrder"), new String[] { "OTHER" });
+      index.store();
+
+      FingerprintIndex next = load();
+      assertNull(next.get("generated.ShipOrder", next.fingerprint("ShipOrder;item")));
+      assertNull(next.get("generated.Item", next.fingerprint("ShipOrder")));
+   }
+
+   @Test
+   public void unchangedIndexIsNotWritten() throws IOException {
+      FingerprintIndex index = load();
+      index.put("generated.ShipOrder", index.fingerprint("ShipOrder"), new String[] { "OTHER" });
+      assertTrue(index.store());
+
+      FingerprintIndex next = load();
+      next.put("generated.ShipOrder", next.fingerprint("ShipOrder"), new String[] { "OTHER" });
+      assertFalse(next.store());
+      next.put("generated.ShipOrder", next.fingerprint("ShipOrder"), new String[] { "MANAGED_FIELD" });
+      assertTrue(next.store());
+   }
+}
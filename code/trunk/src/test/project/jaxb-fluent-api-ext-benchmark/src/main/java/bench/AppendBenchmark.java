@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the threads appending to the same managed list with
+ * withNew&lt;Property&gt;(): the synchronized java.util.Vector list against
+ * the striped pending queues generated with the -Xfluent-api-ext-concurrent
+ * option, one stripe per processor. The number of threads can be changed
+ * with the JMH option -t. It has only been run on a single CPU so far, where
+ * the threads take turns instead of contending: whether the striped queues
+ * scale better than the Vector monitor is still to be measured on a
+ * multi-core machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+@Threads(4)
+@State(Scope.Benchmark)
+public class AppendBenchmark {
+	bench.vector.Catalog vectorCatalog;
+
+	bench.concurrent.Catalog concurrentCatalog;
+
+	@Setup(Level.Iteration)
+	public void createCatalogs() {
+		vectorCatalog = new bench.vector.Catalog();
+		concurrentCatalog = new bench.concurrent.Catalog();
+	}
+
+	@Benchmark
+	public bench.vector.Section vector() {
+		return vectorCatalog.withNewSection();
+	}
+
+	@Benchmark
+	public bench.concurrent.Section concurrent() {
+		return concurrentCatalog.withNewSection();
+	}
+}
@@ -0,0 +1,23 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler. The accessor benchmarks
+ * are the same in each package, on the classes generated with another
+ * collection type or plugin option, see the pom; <code>bench.xjc</code>
+ * measures the generation itself. The arguments are the JMH command line options,
+ * e.g. <code>java -jar target/benchmarks.jar vector -p size=1000</code> after
+ * <code>mvn package</code>.
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build())
+				.run();
+	}
+}
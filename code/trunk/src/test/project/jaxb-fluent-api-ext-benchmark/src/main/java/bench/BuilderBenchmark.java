@@ -0,0 +1,59 @@
+package bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.builder.Catalog;
+import bench.builder.Product;
+import bench.builder.Section;
+
+/**
+ * Builds a section of products with withNew&lt;Property&gt;(), growing the
+ * list one element at a time, and with the generated builder, creating the
+ * list at its final size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuilderBenchmark {
+	@Param({ "10", "1000" })
+	int size;
+
+	@Benchmark
+	public Catalog withNew() {
+		Catalog catalog = new Catalog();
+		Section section = catalog.withNewSection();
+		section.setName("section");
+		for (int i = 0; i < size; i++) {
+			Product product = section.withNewProduct();
+			product.setId(i);
+			product.withPrice().setAmount(BigDecimal.ONE);
+		}
+		return catalog;
+	}
+
+	@Benchmark
+	public Catalog builder() {
+		Section.Builder section = new Section.Builder().withName("section");
+		for (int i = 0; i < size; i++) {
+			Product product = section.withNewProduct();
+			product.setId(i);
+			product.withPrice().setAmount(BigDecimal.ONE);
+		}
+		return new Catalog.Builder().addSection(section.build()).build();
+	}
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.chain.Catalog;
+import bench.chain.Product;
+
+/**
+ * Builds a catalog with the void JAXB setters and with the chained
+ * with&lt;Property&gt;(value) setters, both next to the with&lt;Property&gt;()
+ * accessors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark {
+	@Param({ "10", "1000" })
+	int size;
+
+	@Benchmark
+	public Catalog voidSetters() {
+		Catalog catalog = new Catalog();
+		catalog.setVersion("1");
+		catalog.withHeader().setTitle("catalog");
+		catalog.withHeader().withPublisher().setName("publisher");
+		catalog.withHeader().withPublisher().setEmail("publisher@example.com");
+		for (int i = 0; i < size; i++) {
+			Product product = catalog.withSection(i / 10).withNewProduct();
+			product.setId(i);
+			product.setName("product");
+			product.withPrice().setAmount(BigDecimal.ONE);
+			product.withPrice().setCurrency("EUR");
+		}
+		return catalog;
+	}
+
+	@Benchmark
+	public Catalog chainedSetters() {
+		Catalog catalog = new Catalog().withVersion("1");
+		catalog.withHeader().withTitle("catalog").withPublisher().withName("publisher").withEmail(
+				"publisher@example.com");
+		for (int i = 0; i < size; i++) {
+			catalog.withSection(i / 10).withNewProduct().withId(i).withName("product").withPrice().withAmount(
+					BigDecimal.ONE).withCurrency("EUR");
+		}
+		return catalog;
+	}
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.arraylist.Catalog;
+import bench.arraylist.Product;
+
+/**
+ * Deep copy of a catalog with the generated fluentCopy() against a JAXB
+ * marshal/unmarshal round-trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CopyBenchmark {
+	@Param({ "10", "1000" })
+	int size;
+
+	Catalog catalog;
+
+	JAXBContext context;
+
+	@Setup
+	public void createCatalog() throws JAXBException {
+		catalog = new Catalog();
+		catalog.setVersion("1");
+		catalog.withHeader().setTitle("catalog");
+		catalog.withHeader().withPublisher().setName("publisher");
+		for (int i = 0; i < size; i++) {
+			Product product = catalog.withSection(i / 10).withNewProduct();
+			product.setId(i);
+			product.setName("product" + i);
+			product.withPrice().setAmount(BigDecimal.valueOf(i));
+			product.withPrice().setCurrency("EUR");
+			product.withNewVariant().setSku("sku" + i);
+		}
+		for (int i = 0; i < catalog.getSection().size(); i++) {
+			catalog.withSection(i).setName("section" + i);
+		}
+		context = JAXBContext.newInstance(Catalog.class);
+	}
+
+	@Benchmark
+	public Catalog fluentCopy() {
+		return catalog.fluentCopy();
+	}
+
+	@Benchmark
+	public Catalog marshalRoundTrip() throws JAXBException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		context.createMarshaller().marshal(catalog, out);
+		return (Catalog) context.createUnmarshaller().unmarshal(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.fork.Catalog;
+import bench.fork.Product;
+
+/**
+ * Derives a variant of a catalog changing the price of one product, from a
+ * deep copy and from a copy-on-write fork of the catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ForkBenchmark {
+	@Param({ "10", "1000" })
+	int size;
+
+	Catalog catalog;
+
+	@Setup
+	public void createCatalog() {
+		catalog = new Catalog();
+		catalog.setVersion("1");
+		catalog.withHeader().setTitle("catalog");
+		for (int i = 0; i < size; i++) {
+			Product product = catalog.withSection(i / 10).withNewProduct();
+			product.setId(i);
+			product.setName("product" + i);
+			product.withPrice().setAmount(BigDecimal.valueOf(i));
+			product.withPrice().setCurrency("EUR");
+		}
+	}
+
+	@Benchmark
+	public Catalog copyVariant() {
+		Catalog variant = catalog.fluentCopy();
+		variant.withSection(0).withProduct(0).withPrice().setAmount(BigDecimal.ZERO);
+		return variant;
+	}
+
+	@Benchmark
+	public Catalog forkVariant() {
+		Catalog variant = catalog.fluentFork();
+		variant.withSection(0).withProduct(0).withPrice().setAmount(BigDecimal.ZERO);
+		return variant;
+	}
+}
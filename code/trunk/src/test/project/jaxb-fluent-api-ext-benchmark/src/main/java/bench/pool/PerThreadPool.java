@@ -0,0 +1,46 @@
+package bench.pool;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of the pool package, keeping up to 64 instances per thread, see
+ * {@link #install()}.
+ */
+public class PerThreadPool<T> implements FluentPool<T> {
+	private static final int CAPACITY = 64;
+
+	private final ThreadLocal<ArrayList<T>> values = new ThreadLocal<ArrayList<T>>() {
+		@Override
+		protected ArrayList<T> initialValue() {
+			return new ArrayList<T>(CAPACITY);
+		}
+	};
+
+	public T acquire() {
+		ArrayList<T> pool = values.get();
+		return pool.isEmpty() ? null : pool.remove(pool.size() - 1);
+	}
+
+	public void release(T value) {
+		ArrayList<T> pool = values.get();
+		if (pool.size() < CAPACITY) {
+			pool.add(value);
+		}
+	}
+
+	/**
+	 * Sets a per-thread pool for each generated class of the package.
+	 */
+	public static void install() {
+		Catalog.fluentSetPool(new PerThreadPool<Catalog>());
+		Header.fluentSetPool(new PerThreadPool<Header>());
+		Party.fluentSetPool(new PerThreadPool<Party>());
+		Price.fluentSetPool(new PerThreadPool<Price>());
+		Product.fluentSetPool(new PerThreadPool<Product>());
+		Product.Variant.fluentSetPool(new PerThreadPool<Product.Variant>());
+		Section.fluentSetPool(new PerThreadPool<Section>());
+		ShipOrder.fluentSetPool(new PerThreadPool<ShipOrder>());
+		ShipOrder.Item.fluentSetPool(new PerThreadPool<ShipOrder.Item>());
+		ShipOrder.ShipTo.fluentSetPool(new PerThreadPool<ShipOrder.ShipTo>());
+	}
+}
@@ -0,0 +1,172 @@
+package bench.xjc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import redmosquito.xjc.plugin.fluent.ext.FluentApiExtPlugin;
+
+import com.sun.codemodel.JCodeModel;
+import com.sun.tools.xjc.BadCommandLineException;
+import com.sun.tools.xjc.ModelLoader;
+import com.sun.tools.xjc.Options;
+import com.sun.tools.xjc.model.Model;
+import com.sun.tools.xjc.outline.Outline;
+import com.sun.tools.xjc.util.ErrorReceiverFilter;
+
+/**
+ * XJC generation time of synthetic schemas, with and without the plugin.
+ * <code>generate</code> parses the schema and generates the code model, running
+ * the plugin unless <code>plugin</code> is <code>none</code>: the difference of
+ * the two gives the marginal cost of the plugin. <code>pluginRun</code> only
+ * measures <code>FluentApiExtPlugin.run</code> on a fresh outline.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@State(Scope.Benchmark)
+public class GenerationBenchmark {
+	/** Number of named complex types of the schema. */
+	@Param({ "100", "1000", "5000", "20000" })
+	int types;
+
+	/** Plugin options: none (XJC alone), default or parallel. */
+	@Param({ "none", "default", "parallel" })
+	String plugin;
+
+	File schema;
+
+	/** Outline generated without the plugin before each run of the plugin. */
+	@State(Scope.Thread)
+	public static class FreshOutline {
+		Outline outline;
+
+		@Setup(Level.Invocation)
+		public void generateWithoutPlugin(GenerationBenchmark benchmark) {
+			outline = generate(benchmark.options(false));
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void writeSchema() throws IOException {
+		schema = File.createTempFile("synthetic-" + types + "-", ".xsd");
+		writeSchema(schema, types);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteSchema() {
+		schema.delete();
+	}
+
+	@Benchmark
+	public Outline generate() throws BadCommandLineException, IOException {
+		return generate(options(!"none".equals(plugin)));
+	}
+
+	@Benchmark
+	public boolean pluginRun(FreshOutline fresh) throws BadCommandLineException, IOException, SAXException {
+		if ("none".equals(plugin)) {
+			return false;
+		}
+		Options options = fresh.outline.getModel().options;
+		return createPlugin(options).run(fresh.outline, options, new ErrorReceiverFilter());
+	}
+
+	Options options(boolean withPlugin) {
+		Options options = new Options();
+		options.addGrammar(schema);
+		if (withPlugin) {
+			try {
+				options.activePlugins.add(createPlugin(options));
+			} catch (BadCommandLineException e) {
+				throw new IllegalStateException(e);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return options;
+	}
+
+	FluentApiExtPlugin createPlugin(Options options) throws BadCommandLineException, IOException {
+		FluentApiExtPlugin fluentApiExt = new FluentApiExtPlugin();
+		if ("parallel".equals(plugin)) {
+			fluentApiExt.parseArgument(options, new String[] { "-Xfluent-api-ext-parallel" }, 0);
+		}
+		return fluentApiExt;
+	}
+
+	static Outline generate(Options options) {
+		ErrorReceiverFilter errorReceiver = new ErrorReceiverFilter();
+		Model model = ModelLoader.load(options, new JCodeModel(), errorReceiver);
+		Outline outline = model == null ? null : model.generateCode(options, errorReceiver);
+		if (outline == null || errorReceiver.hadError()) {
+			throw new IllegalStateException("XJC failed on " + options.getGrammars()[0].getSystemId());
+		}
+		return outline;
+	}
+
+	/**
+	 * Writes a schema of chained complex types: each type nests the next one,
+	 * holds an unbounded list of another one and, every tenth type, two levels
+	 * of anonymous types.
+	 */
+	static void writeSchema(File file, int types) throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>");
+			out.println("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">");
+			out.println("  <xs:element name=\"root\" type=\"t0\" />");
+			for (int i = 0; i < types; i++) {
+				out.println("  <xs:complexType name=\"t" + i + "\">");
+				out.println("    <xs:sequence>");
+				out.println("      <xs:element name=\"name\" type=\"xs:string\" />");
+				if (i + 1 < types) {
+					out.println("      <xs:element name=\"child\" type=\"t" + (i + 1) + "\" minOccurs=\"0\" />");
+				}
+				out.println("      <xs:element name=\"item\" type=\"t" + (i * 7 + 3) % types
+						+ "\" minOccurs=\"0\" maxOccurs=\"unbounded\" />");
+				out.println("      <xs:element name=\"code\" type=\"xs:int\" minOccurs=\"0\" maxOccurs=\"unbounded\" />");
+				if (i % 10 == 0) {
+					out.println("      <xs:element name=\"entry\" minOccurs=\"0\" maxOccurs=\"unbounded\">");
+					out.println("        <xs:complexType>");
+					out.println("          <xs:sequence>");
+					out.println("            <xs:element name=\"value\" type=\"xs:decimal\" />");
+					out.println("            <xs:element name=\"detail\" maxOccurs=\"unbounded\">");
+					out.println("              <xs:complexType>");
+					out.println("                <xs:attribute name=\"key\" type=\"xs:string\" />");
+					out.println("              </xs:complexType>");
+					out.println("            </xs:element>");
+					out.println("          </xs:sequence>");
+					out.println("        </xs:complexType>");
+					out.println("      </xs:element>");
+				}
+				out.println("    </xs:sequence>");
+				out.println("    <xs:attribute name=\"id\" type=\"xs:long\" />");
+				out.println("  </xs:complexType>");
+			}
+			out.println("</xs:schema>");
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package bench.${accessor.package};
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ${accessor.description}
+ * <p>
+ * Copied from src/main/templates into each generated package, see the pom.
+ * The operations are sampled, so that the percentiles of the pooled instances
+ * can be compared with the ones of the arraylist package.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccessorBenchmark {
+	@Param({ "10", "1000" })
+	int size;
+
+	@Setup
+	public void setUp() {
+		${accessor.setUp}
+	}
+
+	private static Catalog newCatalog() {
+		return ${accessor.newCatalog};
+	}
+
+	private static ShipOrder newShipOrder() {
+		return ${accessor.newShipOrder};
+	}
+
+	private static void release(Blackhole blackhole, Catalog catalog) {
+		blackhole.consume(catalog);
+		${accessor.releaseCatalog}
+	}
+
+	private static void release(Blackhole blackhole, ShipOrder shipOrder) {
+		blackhole.consume(shipOrder);
+		${accessor.releaseShipOrder}
+	}
+
+	@Benchmark
+	public void withManagedField(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		catalog.withHeader().withPublisher().setName("publisher");
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void withNew(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		for (int i = 0; i < size; i++) {
+			catalog.withNewSection().setName("section");
+		}
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void withNewArray(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		for (Section section : catalog.withNewSections(size)) {
+			section.setName("section");
+		}
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void indexedAscending(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		for (int i = 0; i < size; i++) {
+			catalog.withSection(i).setName("section");
+		}
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void indexedDescending(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		for (int i = size - 1; i >= 0; i--) {
+			catalog.withSection(i).setName("section");
+		}
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void nestedGraph(Blackhole blackhole) {
+		Catalog catalog = newCatalog();
+		catalog.withHeader().setTitle("catalog");
+		for (int i = 0; i < size; i++) {
+			Product product = catalog.withSection(i / 10).withNewProduct();
+			product.setId(i);
+			product.withPrice().setAmount(BigDecimal.ONE);
+			product.withVariant(1).setSku("sku");
+		}
+		release(blackhole, catalog);
+	}
+
+	@Benchmark
+	public void shipOrder(Blackhole blackhole) {
+		ShipOrder shipOrder = newShipOrder();
+		shipOrder.withShipTo().setName("name");
+		for (int i = 0; i < size; i++) {
+			shipOrder.withItem(i).setTitle("title");
+		}
+		release(blackhole, shipOrder);
+	}
+}
@@ -0,0 +1,51 @@
+package generated.collection;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Custom collection type of the bindings, counting the calls to its bulk
+ * method.
+ */
+public class CountingList<E> extends AbstractList<E> {
+	private final List<E> elements = new ArrayList<E>();
+
+	private int bulkCalls;
+
+	public int getBulkCalls() {
+		return bulkCalls;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> values) {
+		bulkCalls++;
+		return elements.addAll(values);
+	}
+
+	@Override
+	public void add(int index, E element) {
+		elements.add(index, element);
+	}
+
+	@Override
+	public E get(int index) {
+		return elements.get(index);
+	}
+
+	@Override
+	public E set(int index, E element) {
+		return elements.set(index, element);
+	}
+
+	@Override
+	public E remove(int index) {
+		return elements.remove(index);
+	}
+
+	@Override
+	public int size() {
+		return elements.size();
+	}
+}
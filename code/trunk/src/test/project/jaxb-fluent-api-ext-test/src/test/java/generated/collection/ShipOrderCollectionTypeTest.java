@@ -0,0 +1,28 @@
+package generated.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the lists of a custom collection type: with&lt;Property&gt;(int)
+ * pads them with one call to their bulk method.
+ */
+public class ShipOrderCollectionTypeTest {
+	@Test
+	public void customListIsPaddedInOneCall() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item item = shipOrder.withItem(4);
+		assertTrue(shipOrder.getItem() instanceof CountingList);
+		CountingList<ShipOrder.Item> items = (CountingList<ShipOrder.Item>) shipOrder.getItem();
+		assertEquals(1, items.getBulkCalls());
+		assertEquals(5, items.size());
+		assertNull(items.get(0));
+		assertSame(item, items.get(4));
+		assertSame(item, shipOrder.withItem(4));
+		assertEquals(1, items.getBulkCalls());
+	}
+}
@@ -0,0 +1,53 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertFalse;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+/**
+ * Checks that fluentCopy() copies the pages held by the choice list and by
+ * the JAXBElement of the cover: writing to the copy leaves the original
+ * unchanged.
+ */
+public class NotebookCopyTest {
+	@Test
+	public void choiceListElementsAreCopied() {
+		Notebook notebook = createNotebook();
+		Notebook copy = notebook.fluentCopy();
+		assertEquals(2, copy.getPageOrTitle().size());
+		assertEquals("title", copy.getPageOrTitle().get(0));
+		Page page = (Page) copy.getPageOrTitle().get(1);
+		assertNotSame(notebook.getPageOrTitle().get(1), page);
+		page.setText("changed");
+		assertEquals("text", ((Page) notebook.getPageOrTitle().get(1)).getText());
+	}
+
+	@Test
+	public void elementValuesAreCopied() {
+		Notebook notebook = createNotebook();
+		Notebook copy = notebook.fluentCopy();
+		assertNotSame(notebook.getCover(), copy.getCover());
+		assertEquals(notebook.getCover().getName(), copy.getCover().getName());
+		copy.getCover().getValue().setText("changed");
+		assertEquals("cover", notebook.getCover().getValue().getText());
+		copy.getCover().setNil(true);
+		assertFalse(notebook.getCover().isNil());
+	}
+
+	private Notebook createNotebook() {
+		Page cover = new Page();
+		cover.setText("cover");
+		Page page = new Page();
+		page.setText("text");
+		Notebook notebook = new Notebook();
+		notebook.setCover(new JAXBElement<Page>(new QName("cover"), Page.class, Notebook.class, cover));
+		notebook.getPageOrTitle().add("title");
+		notebook.getPageOrTitle().add(page);
+		return notebook;
+	}
+}
@@ -0,0 +1,33 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that a reading, which has primitive fields, is never empty: a
+ * reading whose values are 0 and false is kept by fluentCompact(true).
+ */
+public class SensorLogCompactTest {
+	@Test
+	public void zeroReadingIsNotEmpty() {
+		SensorLog sensorLog = new SensorLog();
+		sensorLog.getReading().add(new SensorLog.Reading());
+		assertFalse(sensorLog.getReading().get(0).fluentIsEmpty());
+		assertFalse(sensorLog.fluentIsEmpty());
+		sensorLog.fluentCompact(true);
+		assertEquals(1, sensorLog.getReading().size());
+	}
+
+	@Test
+	public void storedZeroReadingIsNotEmpty() {
+		SensorLog sensorLog = new SensorLog();
+		assertTrue(sensorLog.fluentIsEmpty());
+		assertFalse(sensorLog.withNewReading().fluentIsEmpty());
+		sensorLog.fluentCompact(true);
+		assertEquals(1, sensorLog.getReading().size());
+		assertEquals(0L, sensorLog.getReading().get(0).getTime());
+	}
+}
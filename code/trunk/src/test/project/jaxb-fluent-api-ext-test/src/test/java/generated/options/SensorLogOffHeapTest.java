@@ -0,0 +1,88 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.junit.Test;
+
+/**
+ * Checks the off-heap store of the readings: withNewReading() returns a
+ * cursor over the store, and the records are copied into real readings when
+ * the list is read or marshalled.
+ */
+public class SensorLogOffHeapTest {
+	@Test
+	public void newReadingsAreStoredOffHeap() {
+		SensorLog sensorLog = new SensorLog();
+		SensorLog.Reading first = sensorLog.withNewReading();
+		assertTrue(first instanceof SensorLog.Reading.FluentCursor);
+		first.setTime(1L);
+		SensorLog.Reading second = sensorLog.withNewReading();
+		assertSame(first, second);
+		second.setTime(2L);
+		second.setQuality(Short.valueOf((short) 3));
+		assertEquals(2L, second.getTime());
+		assertEquals(Short.valueOf((short) 3), second.getQuality());
+		second.setQuality(null);
+		assertNull(second.getQuality());
+	}
+
+	@Test
+	public void resetDiscardsTheRecords() {
+		SensorLog sensorLog = new SensorLog();
+		sensorLog.withNewReading().setTime(1L);
+		sensorLog.withNewReading().setTime(2L);
+		sensorLog.fluentReset();
+		assertTrue(sensorLog.getReading().isEmpty());
+		sensorLog.withNewReading().setTime(3L);
+		assertEquals(1, sensorLog.getReading().size());
+		assertEquals(3L, sensorLog.getReading().get(0).getTime());
+	}
+
+	@Test
+	public void readingTheListCopiesTheRecords() {
+		SensorLog sensorLog = new SensorLog();
+		for (int i = 0; i < 100; i++) {
+			SensorLog.Reading reading = sensorLog.withNewReading();
+			reading.setTime(i);
+			reading.setValue(i / 2.0);
+			reading.setChannel(i % 4);
+			reading.setValid(i % 2 == 0);
+			if (i % 3 == 0) {
+				reading.setQuality(Short.valueOf((short) i));
+			}
+		}
+		assertEquals(100, sensorLog.getReading().size());
+		for (int i = 0; i < 100; i++) {
+			SensorLog.Reading reading = sensorLog.getReading().get(i);
+			assertFalse(reading instanceof SensorLog.Reading.FluentCursor);
+			assertEquals(i, reading.getTime());
+			assertEquals(i / 2.0, reading.getValue(), 0);
+			assertEquals(i % 4, reading.getChannel());
+			assertEquals(i % 2 == 0, reading.isValid());
+			assertEquals(i % 3 == 0 ? Short.valueOf((short) i) : null, reading.getQuality());
+		}
+	}
+
+	@Test
+	public void marshallingFlushesTheStore() throws JAXBException {
+		SensorLog sensorLog = new SensorLog();
+		sensorLog.withNewReading().setTime(1L);
+		sensorLog.withNewReading().setTime(2L);
+		StringWriter writer = new StringWriter();
+		JAXBContext context = JAXBContext.newInstance(SensorLog.class);
+		context.createMarshaller().marshal(sensorLog, writer);
+		SensorLog read = (SensorLog) context.createUnmarshaller().unmarshal(new StringReader(writer.toString()));
+		assertEquals(2, read.getReading().size());
+		assertEquals(2L, read.getReading().get(1).getTime());
+	}
+}
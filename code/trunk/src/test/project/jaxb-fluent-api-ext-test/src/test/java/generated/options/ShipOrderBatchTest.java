@@ -0,0 +1,29 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Checks withNewItems(int count): the new items are appended after the
+ * existing ones, in the order of the returned array.
+ */
+public class ShipOrderBatchTest {
+	@Test
+	public void newItemsAreAppended() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item first = shipOrder.withNewItem();
+		ShipOrder.Item[] items = shipOrder.withNewItems(3);
+		assertEquals(3, items.length);
+		assertEquals(4, shipOrder.getItem().size());
+		assertSame(first, shipOrder.getItem().get(0));
+		for (int i = 0; i < items.length; i++) {
+			assertNotNull(items[i]);
+			assertSame(items[i], shipOrder.getItem().get(i + 1));
+		}
+		assertEquals(0, shipOrder.withNewItems(0).length);
+		assertEquals(4, shipOrder.getItem().size());
+	}
+}
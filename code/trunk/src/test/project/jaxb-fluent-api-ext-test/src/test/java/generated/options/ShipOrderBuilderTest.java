@@ -0,0 +1,44 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Vector;
+
+import org.junit.Test;
+
+/**
+ * Checks the generated builders: the lists are created at their final size,
+ * with the collection type of the bindings.
+ */
+public class ShipOrderBuilderTest {
+	@Test
+	public void buildCreatesTheListsAtTheirFinalSize() {
+		ShipOrder.Builder builder = new ShipOrder.Builder().withOrderId("1").withOrderPerson("person")
+			.withShipTo(new ShipOrder.ShipTo.Builder().withCity("city").build());
+		for (int i = 0; i < 20; i++) {
+			builder.withNewItem().setTitle("title" + i);
+		}
+		builder.addItem(new ShipOrder.Item.Builder().withTitle("last").build());
+		ShipOrder shipOrder = builder.build();
+		assertEquals("1", shipOrder.getOrderId());
+		assertEquals("city", shipOrder.getShipTo().getCity());
+		assertTrue(shipOrder.getItem() instanceof Vector);
+		assertEquals(21, shipOrder.getItem().size());
+		assertEquals(21, ((Vector<ShipOrder.Item>) shipOrder.getItem()).capacity());
+		assertEquals("title0", shipOrder.getItem().get(0).getTitle());
+		assertEquals("last", shipOrder.getItem().get(20).getTitle());
+	}
+
+	@Test
+	public void buildWithoutElements() {
+		assertTrue(new ShipOrder.Builder().build().getItem().isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void buildOnlyOnce() {
+		ShipOrder.Builder builder = new ShipOrder.Builder();
+		builder.build();
+		builder.build();
+	}
+}
@@ -0,0 +1,47 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/**
+ * Checks withItemAll(), which appends the items, and adoptItem(), which
+ * replaces them, keeping a list of the class of the JAXB list as is.
+ */
+public class ShipOrderBulkTest {
+	@Test
+	public void allItemsAreAppended() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item first = shipOrder.withNewItem();
+		ShipOrder.Item second = new ShipOrder.Item();
+		ShipOrder.Item third = new ShipOrder.Item();
+		assertSame(shipOrder, shipOrder.withItemAll(Arrays.asList(second, third)));
+		assertEquals(Arrays.asList(first, second, third), shipOrder.getItem());
+	}
+
+	@Test
+	public void listOfTheSameClassIsAdopted() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withNewItem();
+		List<ShipOrder.Item> items = new Vector<ShipOrder.Item>();
+		items.add(new ShipOrder.Item());
+		assertSame(shipOrder, shipOrder.adoptItem(items));
+		assertSame(items, shipOrder.getItem());
+	}
+
+	@Test
+	public void otherListIsCopied() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withNewItem();
+		ShipOrder.Item item = new ShipOrder.Item();
+		List<ShipOrder.Item> items = Arrays.asList(item);
+		shipOrder.adoptItem(items);
+		assertEquals(items, shipOrder.getItem());
+		assertEquals(Vector.class, shipOrder.getItem().getClass());
+	}
+}
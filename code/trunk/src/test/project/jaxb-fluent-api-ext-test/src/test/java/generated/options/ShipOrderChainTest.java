@@ -0,0 +1,44 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks the chained with<Property>(value) setters of the simple fields.
+ */
+public class ShipOrderChainTest {
+	@Test
+	public void chainedSettersReturnTheInstance() {
+		ShipOrder shipOrder = new ShipOrder();
+		assertSame(shipOrder, shipOrder.withOrderId("1").withOrderPerson("person"));
+		shipOrder.withShipTo().withName("name").withAddress("address").withCity("city").withCountry("country");
+		shipOrder.withItem(0).withType(ItemType.A).withTitle("title").withQuantity(BigInteger.ONE).withPrice(
+				BigDecimal.TEN);
+		assertEquals("1", shipOrder.getOrderId());
+		assertEquals("person", shipOrder.getOrderPerson());
+		assertEquals("city", shipOrder.getShipTo().getCity());
+		assertEquals(ItemType.A, shipOrder.getItem().get(0).getType());
+		assertEquals(BigDecimal.TEN, shipOrder.getItem().get(0).getPrice());
+	}
+
+	@Test
+	public void chainedSettersWriteTheOffHeapRecord() {
+		SensorLog sensorLog = new SensorLog().withDevice("device");
+		sensorLog.withNewReading().withTime(1L).withValue(2.0).withChannel(3).withValid(true);
+		SensorLog.Reading reading = sensorLog.getReading().get(0);
+		assertEquals(1L, reading.getTime());
+		assertEquals(2.0, reading.getValue(), 0);
+		assertEquals(3, reading.getChannel());
+		assertEquals(true, reading.isValid());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void emptyInstanceIsReadOnly() {
+		ShipOrder.ShipTo.FLUENT_EMPTY.withCity("city");
+	}
+}
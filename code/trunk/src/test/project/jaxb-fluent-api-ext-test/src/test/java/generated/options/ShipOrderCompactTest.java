@@ -0,0 +1,73 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Vector;
+
+import org.junit.Test;
+
+/**
+ * Checks fluentCompact(): the lists are trimmed to their size and, with
+ * prune, the empty children and the trailing null padding are dropped, the
+ * indexes of the remaining elements being kept.
+ */
+public class ShipOrderCompactTest {
+	@Test
+	public void compactTrimsTheLists() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withItem(20).setTitle("title");
+		assertEquals(21, shipOrder.getItem().size());
+		assertTrue(shipOrder.fluentCompact(false) >= 0);
+		assertEquals(21, shipOrder.getItem().size());
+		assertEquals(21, ((Vector<ShipOrder.Item>) shipOrder.getItem()).capacity());
+		assertEquals(0, shipOrder.fluentCompact(false));
+	}
+
+	@Test
+	public void pruneDropsTheEmptyChildrenAndThePadding() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.setOrderId("1");
+		shipOrder.withShipTo();
+		shipOrder.withItem(5);
+		shipOrder.withItem(10).setTitle("title");
+		assertTrue(shipOrder.getShipTo().fluentIsEmpty());
+		assertTrue(shipOrder.fluentCompact(true) > 0);
+		assertNull(shipOrder.getShipTo());
+		assertEquals(11, shipOrder.getItem().size());
+		assertNull(shipOrder.getItem().get(5));
+		assertEquals("title", shipOrder.getItem().get(10).getTitle());
+		assertEquals(11, ((Vector<ShipOrder.Item>) shipOrder.getItem()).capacity());
+		assertFalse(shipOrder.fluentIsEmpty());
+	}
+
+	@Test
+	public void pruneDropsOnlyTheTrailingPadding() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withItem(2).setTitle("title");
+		shipOrder.withItem(6);
+		shipOrder.fluentCompact(true);
+		assertEquals(3, shipOrder.getItem().size());
+		assertEquals("title", shipOrder.withItem(2).getTitle());
+	}
+
+	@Test
+	public void pruneKeepsTheChildrenSharedWithAFork() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withShipTo();
+		shipOrder.fluentFork().fluentCompact(true);
+		assertNotNull(shipOrder.getShipTo());
+	}
+
+	@Test
+	public void compactKeepsTheListsSharedWithAFork() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withItem(3);
+		assertEquals(0, shipOrder.fluentFork().fluentCompact(true));
+		assertEquals(4, shipOrder.getItem().size());
+		assertNotNull(shipOrder.getItem().get(3));
+	}
+}
@@ -0,0 +1,109 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Races the threads on the lazy initialization of the with<Property>()
+ * methods generated with -Xfluent-api-ext-threadsafe: in each round, the
+ * threads initialize the same fresh instances and must all get the same
+ * children.
+ */
+public class ShipOrderConcurrencyTest {
+	private static final int THREADS = 4;
+
+	private static final int ROUNDS = 100;
+
+	private static final int ORDERS = 10000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void withShipToReturnsOneInstance() throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		for (int round = 0; round < ROUNDS; round++) {
+			final ShipOrder[] shipOrders = new ShipOrder[ORDERS];
+			for (int i = 0; i < ORDERS; i++) {
+				shipOrders[i] = new ShipOrder();
+			}
+			@SuppressWarnings("unchecked")
+			Future<ShipOrder.ShipTo[]>[] results = new Future[THREADS];
+			for (int t = 0; t < THREADS; t++) {
+				results[t] = executor.submit(new Callable<ShipOrder.ShipTo[]>() {
+					public ShipOrder.ShipTo[] call() throws Exception {
+						ShipOrder.ShipTo[] shipTos = new ShipOrder.ShipTo[ORDERS];
+						barrier.await();
+						for (int i = 0; i < ORDERS; i++) {
+							shipTos[i] = shipOrders[i].withShipTo();
+						}
+						return shipTos;
+					}
+				});
+			}
+			ShipOrder.ShipTo[] shipTos = results[0].get();
+			for (int t = 1; t < THREADS; t++) {
+				ShipOrder.ShipTo[] otherShipTos = results[t].get();
+				for (int i = 0; i < ORDERS; i++) {
+					assertSame("round " + round + ", order " + i, shipTos[i], otherShipTos[i]);
+				}
+			}
+			for (int i = 0; i < ORDERS; i++) {
+				assertSame("round " + round + ", order " + i, shipTos[i], shipOrders[i].getShipTo());
+			}
+		}
+	}
+
+	@Test
+	public void withShipToAfterSetToNull() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withShipTo().setName("name");
+		shipOrder.setShipTo(null);
+		assertNull(shipOrder.withShipTo().getName());
+		assertSame(shipOrder.getShipTo(), shipOrder.withShipTo());
+	}
+
+	@Test
+	public void withShipToAfterReset() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setName("name");
+		shipOrder.fluentReset();
+		assertSame(shipTo, shipOrder.withShipTo());
+		assertNull(shipTo.getName());
+	}
+
+	@Test
+	public void withShipToAfterResetOfAFork() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setName("name");
+		ShipOrder fork = shipOrder.fluentFork();
+		fork.fluentReset();
+		assertNull(fork.getShipTo());
+		assertNotSame(shipTo, fork.withShipTo());
+		assertSame(fork.getShipTo(), fork.withShipTo());
+		assertEquals("name", shipTo.getName());
+	}
+}
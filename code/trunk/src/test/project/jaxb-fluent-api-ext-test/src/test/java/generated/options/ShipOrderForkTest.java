@@ -0,0 +1,71 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the copy-on-write forks generated with -Xfluent-api-ext-fork: a
+ * fork shares the children of its origin until they are written through the
+ * with<Property>() methods.
+ */
+public class ShipOrderForkTest {
+	private ShipOrder base;
+
+	@Before
+	public void setUp() {
+		base = new ShipOrder();
+		base.setOrderId("1");
+		base.withShipTo().setCity("base");
+		base.withItem(0).setTitle("first");
+		base.withItem(1).setTitle("second");
+	}
+
+	@Test
+	public void forkSharesChildren() {
+		ShipOrder fork = base.fluentFork();
+		assertEquals("1", fork.getOrderId());
+		assertSame(base.getShipTo(), fork.getShipTo());
+		assertSame(base.getItem().get(0), fork.getItem().get(0));
+	}
+
+	@Test
+	public void withShipToCopiesSharedChild() {
+		ShipOrder fork = base.fluentFork();
+		fork.withShipTo().setCity("fork");
+		assertEquals("base", base.getShipTo().getCity());
+		assertEquals("fork", fork.getShipTo().getCity());
+		assertSame(fork.withShipTo(), fork.withShipTo());
+	}
+
+	@Test
+	public void withItemCopiesOnlyWrittenElement() {
+		ShipOrder fork = base.fluentFork();
+		ShipOrder.Item item = fork.withItem(1);
+		item.setTitle("fork");
+		assertSame(item, fork.withItem(1));
+		assertEquals("second", base.getItem().get(1).getTitle());
+		assertSame(base.getItem().get(0), fork.getItem().get(0));
+		assertNotSame(base.getItem().get(1), fork.getItem().get(1));
+	}
+
+	@Test
+	public void withNewItemCopiesSharedList() {
+		ShipOrder fork = base.fluentFork();
+		fork.withNewItem().setTitle("third");
+		assertEquals(2, base.getItem().size());
+		assertEquals(3, fork.getItem().size());
+	}
+
+	@Test
+	public void resetKeepsSharedChildren() {
+		ShipOrder fork = base.fluentFork();
+		fork.fluentReset();
+		assertEquals("base", base.getShipTo().getCity());
+		assertEquals(2, base.getItem().size());
+		assertEquals(0, fork.getItem().size());
+	}
+}
@@ -0,0 +1,66 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+
+/**
+ * Checks the unmarshalling listener of the items: the handler is called for
+ * each item, whether it was written by withNewItem() or withItem(int), and
+ * the items it does not keep are removed from the list.
+ */
+public class ShipOrderListenerTest {
+	@Test
+	public void handlerSeesEachItem() throws JAXBException {
+		final List<String> titles = new ArrayList<String>();
+		ShipOrder read = unmarshal(createShipOrder(), new ShipOrder.ItemHandler() {
+			public boolean handle(ShipOrder.Item value) {
+				titles.add(value.getTitle());
+				return true;
+			}
+		});
+		assertEquals(3, titles.size());
+		assertEquals("first", titles.get(0));
+		assertEquals("third", titles.get(2));
+		assertEquals(3, read.getItem().size());
+	}
+
+	@Test
+	public void droppedItemsAreRemoved() throws JAXBException {
+		ShipOrder read = unmarshal(createShipOrder(), new ShipOrder.ItemHandler() {
+			public boolean handle(ShipOrder.Item value) {
+				return !"first".equals(value.getTitle());
+			}
+		});
+		assertEquals(2, read.getItem().size());
+		assertEquals("second", read.getItem().get(0).getTitle());
+		assertEquals("third", read.getItem().get(1).getTitle());
+	}
+
+	private ShipOrder createShipOrder() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.setOrderId("1");
+		shipOrder.withNewItem().setTitle("first");
+		shipOrder.withItem(2).setTitle("third");
+		shipOrder.withItem(1).setTitle("second");
+		return shipOrder;
+	}
+
+	private ShipOrder unmarshal(ShipOrder shipOrder, ShipOrder.ItemHandler handler) throws JAXBException {
+		StringWriter writer = new StringWriter();
+		JAXBContext context = JAXBContext.newInstance(ShipOrder.class);
+		context.createMarshaller().marshal(shipOrder, writer);
+		Unmarshaller unmarshaller = context.createUnmarshaller();
+		unmarshaller.setListener(ShipOrder.createItemListener(handler, null));
+		return (ShipOrder) unmarshaller.unmarshal(new StringReader(writer.toString()));
+	}
+}
@@ -0,0 +1,57 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the peek<Property>() methods: a missing child is read as the shared
+ * read-only empty instance of its class, without being created.
+ */
+public class ShipOrderPeekTest {
+	@Test
+	public void peekMissingChildren() {
+		ShipOrder shipOrder = new ShipOrder();
+		assertSame(ShipOrder.ShipTo.FLUENT_EMPTY, shipOrder.peekShipTo());
+		assertNull(shipOrder.peekShipTo().getCity());
+		assertTrue(shipOrder.peekItem().isEmpty());
+		assertNull(shipOrder.getShipTo());
+	}
+
+	@Test
+	public void peekExistingChildren() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withShipTo().setCity("city");
+		shipOrder.withItem(1).setTitle("title");
+		assertSame(shipOrder.getShipTo(), shipOrder.peekShipTo());
+		assertEquals(2, shipOrder.peekItem().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void peekedListIsReadOnly() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withItem(0);
+		shipOrder.peekItem().clear();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void emptyInstanceIsReadOnly() {
+		new ShipOrder().peekShipTo().setCity("city");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void emptyInstanceHasNoChainedSetter() {
+		new ShipOrder().peekShipTo().withCity("city");
+	}
+
+	@Test
+	public void emptyInstanceKeepsItsObjectMethods() {
+		ShipOrder.ShipTo empty = ShipOrder.ShipTo.FLUENT_EMPTY;
+		assertTrue(empty.equals(empty));
+		assertEquals(System.identityHashCode(empty), empty.hashCode());
+		assertTrue(empty.toString().length() > 0);
+	}
+}
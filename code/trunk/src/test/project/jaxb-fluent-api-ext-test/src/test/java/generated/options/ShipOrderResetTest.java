@@ -0,0 +1,58 @@
+package generated.options;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks fluentReset(): the simple fields are cleared, while the children and
+ * the lists are cleared in place to be reused.
+ */
+public class ShipOrderResetTest {
+	@Test
+	public void childrenAndListsAreReused() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.setOrderId("1");
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setCity("city");
+		List<ShipOrder.Item> items = shipOrder.getItem();
+		shipOrder.withNewItem().setTitle("title");
+		shipOrder.fluentReset();
+		assertNull(shipOrder.getOrderId());
+		assertSame(shipTo, shipOrder.withShipTo());
+		assertNull(shipTo.getCity());
+		assertSame(items, shipOrder.getItem());
+		assertTrue(items.isEmpty());
+	}
+
+	@Test
+	public void listsOfUnmanagedValuesAreReused() {
+		Notebook notebook = new Notebook();
+		List<Object> pageOrTitle = notebook.getPageOrTitle();
+		pageOrTitle.add("title");
+		pageOrTitle.add(new Page());
+		notebook.fluentReset();
+		assertSame(pageOrTitle, notebook.getPageOrTitle());
+		assertTrue(pageOrTitle.isEmpty());
+	}
+
+	@Test
+	public void publishedFlagIsCleared() throws Exception {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withShipTo();
+		Field published = ShipOrder.class.getDeclaredField("shipToPublished");
+		published.setAccessible(true);
+		assertTrue(published.getBoolean(shipOrder));
+		shipOrder.fluentReset();
+		assertFalse(published.getBoolean(shipOrder));
+		shipOrder.withShipTo().setCity("city");
+		assertEquals("city", shipOrder.getShipTo().getCity());
+	}
+}
@@ -0,0 +1,82 @@
+package generated.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks fluentAcquire() and fluentRecycle(): a recycled instance and its
+ * managed children are cleared and handed out again by the pools set with
+ * fluentSetPool(), but the children shared with a fork stay with the fork.
+ */
+public class ShipOrderPoolTest {
+	@Before
+	public void setPools() {
+		ShipOrder.fluentSetPool(new StackPool<ShipOrder>());
+		ShipOrder.ShipTo.fluentSetPool(new StackPool<ShipOrder.ShipTo>());
+		ShipOrder.Item.fluentSetPool(new StackPool<ShipOrder.Item>());
+	}
+
+	@After
+	public void removePools() {
+		ShipOrder.fluentSetPool(null);
+		ShipOrder.ShipTo.fluentSetPool(null);
+		ShipOrder.Item.fluentSetPool(null);
+	}
+
+	@Test
+	public void recycledInstancesAreAcquiredAgain() {
+		ShipOrder shipOrder = ShipOrder.fluentAcquire();
+		shipOrder.setOrderId("1");
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setName("name");
+		ShipOrder.Item item = shipOrder.withNewItem();
+		item.setTitle("title");
+		shipOrder.fluentRecycle();
+		assertNull(shipTo.getName());
+		assertNull(item.getTitle());
+
+		ShipOrder acquired = ShipOrder.fluentAcquire();
+		assertSame(shipOrder, acquired);
+		assertNull(acquired.getOrderId());
+		assertNull(acquired.getShipTo());
+		assertEquals(0, acquired.getItem().size());
+		assertSame(item, acquired.withNewItem());
+		assertSame(shipTo, acquired.withShipTo());
+	}
+
+	@Test
+	public void childrenSharedWithAForkAreNotRecycled() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setName("name");
+		ShipOrder.Item item = shipOrder.withNewItem();
+		item.setTitle("title");
+		ShipOrder fork = shipOrder.fluentFork();
+		shipOrder.fluentRecycle();
+
+		assertSame(shipTo, fork.getShipTo());
+		assertEquals("name", fork.getShipTo().getName());
+		assertSame(item, fork.getItem().get(0));
+		assertEquals("title", fork.getItem().get(0).getTitle());
+		assertNotSame(shipTo, ShipOrder.ShipTo.fluentAcquire());
+		assertNotSame(item, ShipOrder.Item.fluentAcquire());
+	}
+
+	@Test
+	public void withoutPoolInstancesAreAllocated() {
+		removePools();
+		ShipOrder shipOrder = ShipOrder.fluentAcquire();
+		ShipOrder.ShipTo shipTo = shipOrder.withShipTo();
+		shipTo.setName("name");
+		shipOrder.fluentRecycle();
+		assertNull(shipTo.getName());
+		assertNotSame(shipOrder, ShipOrder.fluentAcquire());
+		assertNotSame(shipTo, ShipOrder.ShipTo.fluentAcquire());
+	}
+}
@@ -0,0 +1,20 @@
+package generated.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-threaded pool of the tests, handing out the last released instance
+ * first.
+ */
+public class StackPool<T> implements FluentPool<T> {
+	private final List<T> values = new ArrayList<T>();
+
+	public T acquire() {
+		return values.isEmpty() ? null : values.remove(values.size() - 1);
+	}
+
+	public void release(T value) {
+		values.add(value);
+	}
+}
@@ -0,0 +1,89 @@
+package generated.primitive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.junit.Test;
+
+/**
+ * Checks the primitive array storage: the values appended with add<Property>()
+ * stay in a primitive array, and they are boxed into the JAXB list only when
+ * the list is read or marshalled.
+ */
+public class TelemetryPrimitiveTest {
+	@Test
+	public void appendedValuesAreBoxedWhenTheListIsRead() {
+		Telemetry telemetry = new Telemetry();
+		for (int i = 0; i < 100; i++) {
+			telemetry.addValue(i);
+		}
+		assertEquals(100, telemetry.getValueCount());
+		assertEquals(100, telemetry.getValue().size());
+		telemetry.addValue(100);
+		assertEquals(101, telemetry.getValueCount());
+		assertEquals(101, telemetry.getValue().size());
+		for (int i = 0; i <= 100; i++) {
+			assertEquals(Integer.valueOf(i), telemetry.getValue().get(i));
+		}
+	}
+
+	@Test
+	public void resetDiscardsTheBufferedValues() {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addValue(1).addValue(2);
+		telemetry.fluentReset();
+		assertEquals(0, telemetry.getValueCount());
+		assertTrue(telemetry.getValue().isEmpty());
+		telemetry.addValue(3);
+		assertEquals(Arrays.asList(3), telemetry.getValue());
+	}
+
+	@Test
+	public void valuesAreCopiedOutWithoutTheList() {
+		Telemetry telemetry = new Telemetry();
+		telemetry.getStamp().add(Long.valueOf(1L));
+		telemetry.addStamp(2L).addStamp(3L);
+		long[] large = new long[4];
+		assertSame(large, telemetry.getStampAs(large));
+		assertArrayEquals(new long[] { 1L, 2L, 3L, 0L }, large);
+		long[] small = new long[0];
+		long[] copied = telemetry.getStampAs(small);
+		assertNotSame(small, copied);
+		assertArrayEquals(new long[] { 1L, 2L, 3L }, copied);
+	}
+
+	@Test
+	public void withValuesReplacesTheValues() {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addSample(1.0).getSample();
+		double[] samples = { 2.0, 3.0 };
+		telemetry.withSampleValues(samples);
+		samples[0] = 4.0;
+		assertEquals(2, telemetry.getSampleCount());
+		assertEquals(Arrays.asList(Double.valueOf(2.0), Double.valueOf(3.0)), telemetry.getSample());
+	}
+
+	@Test
+	public void marshallingFlushesTheValues() throws JAXBException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.withValueValues(new int[] { 1, 2 }).addValue(3);
+		telemetry.addSample(0.5);
+		StringWriter writer = new StringWriter();
+		JAXBContext context = JAXBContext.newInstance(Telemetry.class);
+		context.createMarshaller().marshal(telemetry, writer);
+		Telemetry read = (Telemetry) context.createUnmarshaller().unmarshal(new StringReader(writer.toString()));
+		assertArrayEquals(new int[] { 1, 2, 3 }, read.getValueAs(new int[0]));
+		assertEquals(1, read.getSampleCount());
+		assertEquals(0, read.getStampCount());
+	}
+}
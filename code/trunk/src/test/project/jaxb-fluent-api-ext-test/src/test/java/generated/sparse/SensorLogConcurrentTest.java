@@ -0,0 +1,67 @@
+package generated.sparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Checks the readings appended by concurrent threads: with the concurrent
+ * appends, the readings stay on the heap even though they are eligible for
+ * the off-heap store, so each thread gets its own instances and none is lost.
+ */
+public class SensorLogConcurrentTest {
+	@Test
+	public void concurrentReadingsAreNotShared() throws Exception {
+		final int threads = 4;
+		final int values = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 20; round++) {
+				final SensorLog sensorLog = new SensorLog();
+				final CyclicBarrier barrier = new CyclicBarrier(threads);
+				@SuppressWarnings("unchecked")
+				Future<Object>[] results = new Future[threads];
+				for (int t = 0; t < threads; t++) {
+					final int channel = t;
+					results[t] = executor.submit(new Callable<Object>() {
+						public Object call() throws Exception {
+							barrier.await();
+							for (int i = 0; i < values; i++) {
+								SensorLog.Reading reading = sensorLog.withNewReading();
+								reading.setChannel(channel);
+								reading.setTime(i);
+							}
+							return null;
+						}
+					});
+				}
+				for (Future<Object> result : results) {
+					result.get();
+				}
+				assertEquals("round " + round, threads * values, sensorLog.getReading().size());
+				Set<SensorLog.Reading> readings = Collections.newSetFromMap(new IdentityHashMap<SensorLog.Reading, Boolean>());
+				readings.addAll(sensorLog.getReading());
+				assertEquals("round " + round, threads * values, readings.size());
+				long[] times = new long[threads];
+				for (SensorLog.Reading reading : sensorLog.getReading()) {
+					assertEquals(times[reading.getChannel()]++, reading.getTime());
+				}
+				for (long time : times) {
+					assertTrue(time == values);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
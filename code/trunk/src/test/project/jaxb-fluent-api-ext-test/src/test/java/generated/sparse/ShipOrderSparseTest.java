@@ -0,0 +1,106 @@
+package generated.sparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Checks the sparse storage of withItem(int): the values are moved into the
+ * list when it is read, and the values appended by withNewItem() to the
+ * pending queue keep their indexes. The pending values appended by
+ * concurrent threads, reading the list meanwhile, are not lost.
+ */
+public class ShipOrderSparseTest {
+	@Test
+	public void sparseValuesAreMovedIntoTheList() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item third = shipOrder.withItem(2);
+		ShipOrder.Item first = shipOrder.withItem(0);
+		assertSame(third, shipOrder.withItem(2));
+		assertEquals(3, shipOrder.getItem().size());
+		assertSame(first, shipOrder.getItem().get(0));
+		assertNull(shipOrder.getItem().get(1));
+		assertSame(third, shipOrder.getItem().get(2));
+		assertSame(first, shipOrder.withItem(0));
+	}
+
+	@Test
+	public void pendingValuesKeepTheirIndexes() {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item first = shipOrder.withNewItem();
+		assertSame(first, shipOrder.withItem(0));
+		ShipOrder.Item second = shipOrder.withItem(1);
+		ShipOrder.Item third = shipOrder.withNewItem();
+		assertEquals(3, shipOrder.getItem().size());
+		assertSame(first, shipOrder.getItem().get(0));
+		assertSame(second, shipOrder.getItem().get(1));
+		assertSame(third, shipOrder.getItem().get(2));
+	}
+
+	@Test
+	public void pendingReadingsKeepTheirIndexes() {
+		SensorLog sensorLog = new SensorLog();
+		sensorLog.withNewReading().setTime(1L);
+		sensorLog.withReading(1).setTime(2L);
+		assertEquals(1L, sensorLog.withReading(0).getTime());
+		assertEquals(2, sensorLog.getReading().size());
+		assertEquals(1L, sensorLog.getReading().get(0).getTime());
+		assertEquals(2L, sensorLog.getReading().get(1).getTime());
+	}
+
+	@Test
+	public void resetDiscardsTheSparseAndPendingValues() {
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.withItem(5);
+		shipOrder.withNewItem();
+		shipOrder.fluentReset();
+		assertTrue(shipOrder.getItem().isEmpty());
+		ShipOrder.Item first = shipOrder.withNewItem();
+		assertEquals(1, shipOrder.getItem().size());
+		assertSame(first, shipOrder.getItem().get(0));
+	}
+
+	@Test
+	public void concurrentAppendsAreNotLost() throws Exception {
+		final int threads = 4;
+		final int values = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 100; round++) {
+				final ShipOrder shipOrder = new ShipOrder();
+				final CyclicBarrier barrier = new CyclicBarrier(threads);
+				@SuppressWarnings("unchecked")
+				Future<Object>[] results = new Future[threads];
+				for (int t = 0; t < threads; t++) {
+					results[t] = executor.submit(new Callable<Object>() {
+						public Object call() throws Exception {
+							barrier.await();
+							for (int i = 0; i < values; i++) {
+								shipOrder.withNewItem();
+								if (i % 100 == 0) {
+									shipOrder.getItem();
+								}
+							}
+							return null;
+						}
+					});
+				}
+				for (Future<Object> result : results) {
+					result.get();
+				}
+				assertEquals("round " + round, threads * values, shipOrder.getItem().size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
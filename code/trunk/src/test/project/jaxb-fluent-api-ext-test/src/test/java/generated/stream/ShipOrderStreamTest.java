@@ -0,0 +1,95 @@
+package generated.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+/**
+ * Checks the streaming accessors: once a sink is set, each item returned by
+ * streamNewItem() is written to the sink when the next one is requested or on
+ * flushItem(), and it is never added to the list.
+ */
+public class ShipOrderStreamTest {
+	@Test
+	public void withoutASinkItemsAreAdded() throws JAXBException {
+		ShipOrder shipOrder = new ShipOrder();
+		ShipOrder.Item item = shipOrder.streamNewItem();
+		assertEquals(1, shipOrder.getItem().size());
+		assertSame(item, shipOrder.getItem().get(0));
+	}
+
+	@Test
+	public void streamedItemsGoToTheSink() throws JAXBException {
+		ShipOrder shipOrder = new ShipOrder();
+		CollectingSink sink = new CollectingSink();
+		shipOrder.setItemSink(sink);
+		ShipOrder.Item first = shipOrder.streamNewItem();
+		first.setTitle("first");
+		assertTrue(sink.items.isEmpty());
+		ShipOrder.Item second = shipOrder.streamNewItem();
+		second.setTitle("second");
+		assertEquals(1, sink.items.size());
+		assertSame(first, sink.items.get(0));
+		shipOrder.flushItem();
+		assertEquals(2, sink.items.size());
+		assertSame(second, sink.items.get(1));
+		shipOrder.flushItem();
+		assertEquals(2, sink.items.size());
+		assertTrue(shipOrder.getItem().isEmpty());
+	}
+
+	@Test
+	public void replacingTheSinkFlushesThePendingItem() throws JAXBException {
+		ShipOrder shipOrder = new ShipOrder();
+		CollectingSink sink = new CollectingSink();
+		shipOrder.setItemSink(sink);
+		ShipOrder.Item streamed = shipOrder.streamNewItem();
+		shipOrder.setItemSink(null);
+		assertEquals(1, sink.items.size());
+		assertSame(streamed, sink.items.get(0));
+		ShipOrder.Item added = shipOrder.streamNewItem();
+		assertEquals(1, sink.items.size());
+		assertSame(added, shipOrder.getItem().get(0));
+	}
+
+	@Test
+	public void streamedItemsCanBeMarshalledAsFragments() throws JAXBException {
+		final StringWriter writer = new StringWriter();
+		final Marshaller marshaller = JAXBContext.newInstance(ShipOrder.class).createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		ShipOrder shipOrder = new ShipOrder();
+		shipOrder.setItemSink(new ShipOrder.ItemSink() {
+			public void write(ShipOrder.Item value) throws JAXBException {
+				marshaller.marshal(new JAXBElement<ShipOrder.Item>(new QName("item"), ShipOrder.Item.class, value), writer);
+			}
+		});
+		for (int i = 0; i < 3; i++) {
+			shipOrder.streamNewItem().setTitle("title" + i);
+		}
+		shipOrder.flushItem();
+		String xml = writer.toString();
+		assertTrue(xml.indexOf("<title>title0</title>") < xml.indexOf("<title>title1</title>"));
+		assertTrue(xml.indexOf("<title>title1</title>") < xml.indexOf("<title>title2</title>"));
+		assertTrue(shipOrder.getItem().isEmpty());
+	}
+
+	private static class CollectingSink implements ShipOrder.ItemSink {
+		private final List<ShipOrder.Item> items = new ArrayList<ShipOrder.Item>();
+
+		public void write(ShipOrder.Item value) {
+			items.add(value);
+		}
+	}
+}